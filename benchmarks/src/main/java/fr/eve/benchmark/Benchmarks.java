@@ -0,0 +1,102 @@
+package fr.eve.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import fr.eve.server.Event;
+
+/** The {@code Benchmarks} class holds the data and the helpers shared by the JMH benchmarks of the hot paths of Eve and by the {@code LoadTest}.<br><br>
+ * The benchmarks are:
+ * <ul>
+ * <li>{@code ServerBenchmarks.notifyEvent} and {@code ServerBenchmarks.getEvents}, with several readers tailing or reading the channel at the same time.</li>
+ * <li>{@code EventBenchmarks.serialize} and {@code EventBenchmarks.deserialize}, the event file of the clients for several numbers of events.</li>
+ * <li>{@code EventBenchmarks.serializeEvent}, {@code deserializeEvent}, {@code encodeEvents} and {@code decodeEvents}, the cost of one event with the Java serialization and with the {@code EventCodec}.</li>
+ * <li>{@code InitialFileBenchmark.getInitialFile}, the download of an initial file over the loopback.</li>
+ * </ul>
+ * The events are generated from {@code SEED}, so every run measures the same data. {@code mvn package} builds the benchmarks in {@code benchmarks/target/benchmarks.jar}. Usage:
+ * <pre>java -Xmx8g -jar benchmarks/target/benchmarks.jar [regex] [-p size=10000,1000000] [-p readers=0,1,4,16] [-p fileSize=1048576] [-p port=5200] [-rf csv -rff results.csv]</pre>
+ * The 10 million events of {@code EventBenchmarks.serialize} need a few gigabytes of heap, {@code -p size} runs smaller sizes only.
+ */
+public class Benchmarks {
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Seed of the generated events.
+	 */
+	public static final long SEED = 42;
+
+	/** Number of distinct authors of the generated events.
+	 */
+	public static final int AUTHORS = 16;
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Parse the options of a command line, each option being a name starting with {@code -} followed by its value.
+	 * @param args - Command line.
+	 * @param options - Default value of each option, {@code null} for an option without default. The parsed values are put in this map.
+	 * @throws IllegalArgumentException if an option is unknown or has no value.
+	 */
+	public static void parse(String[] args, Map<String, String> options) {
+		for(int i=0;i<args.length;i++) {
+			if(!args[i].startsWith("-") || i + 1 == args.length || !options.containsKey(args[i].substring(1)))
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			options.put(args[i].substring(1), args[++i]);
+		}
+	}
+
+	/** Generate events, always the same for a given count.
+	 * @param count - Number of events.
+	 * @return Events indexed from {@code 0}, written by {@code AUTHORS} authors one millisecond apart.
+	 */
+	public static List<Event> newEvents(int count) {
+		Random random = new Random(SEED);
+		LocalDateTime time = LocalDateTime.of(2020, 1, 1, 0, 0);
+		List<Event> events = new ArrayList<Event>(count);
+		for(int i=0;i<count;i++) {
+			Event event = new Event("10.0.0." + random.nextInt(AUTHORS), time.plusNanos(i * 1000000L), newPayload(random));
+			event.setIndex(i);
+			events.add(event);
+		}
+		return events;
+	}
+
+	/** Generate the payload of an event, a small JSON object.
+	 * @param random - Random generator.
+	 * @return Payload.
+	 */
+	public static String newPayload(Random random) {
+		StringBuilder text = new StringBuilder();
+		for(int i=16+random.nextInt(48);i>0;i--)
+			text.append((char) ('a' + random.nextInt(26)));
+		return "{\"room\":\"" + random.nextInt(100) + "\",\"user\":" + random.nextInt(10000) + ",\"text\":\"" + text + "\"}";
+	}
+
+	/** Create a temporary directory.
+	 * @return New directory.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static File createDirectory() throws IOException {
+		return Files.createTempDirectory("eve-benchmark").toFile();
+	}
+
+	/** Delete a file or a directory with its content.
+	 * @param file - File to delete.
+	 */
+	public static void delete(File file) {
+		File[] files = file.listFiles();
+		if(files != null)
+			for(File child:files)
+				delete(child);
+		file.delete();
+	}
+}
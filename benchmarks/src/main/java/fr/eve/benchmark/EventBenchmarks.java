@@ -0,0 +1,200 @@
+package fr.eve.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fr.eve.dao.EventsDAO;
+import fr.eve.server.Event;
+import fr.eve.server.EventCodec;
+
+/** The {@code EventBenchmarks} class holds the benchmarks of the serialization of the events.<br><br>
+ * {@code serialize} and {@code deserialize} measure the event file of the clients and of the previous versions of the server, a Java serialized list of {@code size} events.
+ * The other benchmarks measure the cost of one event: alone with the Java serialization, as in an RMI call, and in a batch with the {@code EventCodec}, as in the log and on TCP.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EventBenchmarks {
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Number of events in a batch encoded with the {@code EventCodec}, and of distinct events (de)serialized alone.
+	 */
+	public static final int BATCH_SIZE = 1000;
+
+	/** The {@code EventsFile} class is an event file of {@code size} events, written before the measure.
+	 */
+	@State(Scope.Thread)
+	public static class EventsFile {
+
+		/** Number of events in the file.
+		 */
+		@Param({"10000", "1000000", "10000000"})
+		public int size;
+
+		private File directory;
+		private EventsDAO eventsDAO;
+		private List<Event> events;
+
+		/** Write the file.
+		 * @throws IOException if an I/O error occurs.
+		 */
+		@Setup
+		public void setUp() throws IOException {
+			directory = Benchmarks.createDirectory();
+			eventsDAO = new EventsDAO(new File(directory, "events.eve").getPath());
+			events = Benchmarks.newEvents(size);
+			eventsDAO.update(events);
+		}
+
+		/** Delete the file.
+		 */
+		@TearDown
+		public void tearDown() {
+			events = null;
+			Benchmarks.delete(directory);
+		}
+	}
+
+	/** The {@code Batch} class is a batch of {@code BATCH_SIZE} events, with their Java serialization and their encoding by the {@code EventCodec}.
+	 */
+	@State(Scope.Thread)
+	public static class Batch {
+
+		private List<Event> events;
+		private byte[][] serialized;
+		private byte[] encoded;
+		private ByteArrayOutputStream bytes;
+		private int next;
+
+		/** Generate and serialize the events.
+		 * @throws IOException if an I/O error occurs.
+		 */
+		@Setup
+		public void setUp() throws IOException {
+			events = Benchmarks.newEvents(BATCH_SIZE);
+			serialized = new byte[events.size()][];
+			for(int i=0;i<serialized.length;i++) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				ObjectOutputStream output = new ObjectOutputStream(bytes);
+				output.writeObject(events.get(i));
+				output.close();
+				serialized[i] = bytes.toByteArray();
+			}
+			bytes = new ByteArrayOutputStream();
+			EventCodec.writeEvents(events, new DataOutputStream(bytes));
+			encoded = bytes.toByteArray();
+		}
+
+		private int next() {
+			next = (next + 1) % BATCH_SIZE;
+			return next;
+		}
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Measure {@code EventsDAO.update}, the Java serialization of the whole file.
+	 * @param file - Event file.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void serialize(EventsFile file) throws IOException {
+		file.eventsDAO.update(file.events);
+	}
+
+	/** Measure {@code EventsDAO.find}, the Java deserialization of the whole file.
+	 * @param file - Event file.
+	 * @param blackhole - Consumer of the events.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws ClassNotFoundException if the file is not a list of events.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void deserialize(EventsFile file, Blackhole blackhole) throws IOException, ClassNotFoundException {
+		blackhole.consume(file.eventsDAO.find());
+	}
+
+	/** Measure the Java serialization of one event.
+	 * @param batch - Events.
+	 * @param blackhole - Consumer of the bytes.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Benchmark
+	public void serializeEvent(Batch batch, Blackhole blackhole) throws IOException {
+		batch.bytes.reset();
+		ObjectOutputStream output = new ObjectOutputStream(batch.bytes);
+		output.writeObject(batch.events.get(batch.next()));
+		output.close();
+		blackhole.consume(batch.bytes.size());
+	}
+
+	/** Measure the Java deserialization of one event.
+	 * @param batch - Events.
+	 * @param blackhole - Consumer of the event.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws ClassNotFoundException if the bytes are not an event.
+	 */
+	@Benchmark
+	public void deserializeEvent(Batch batch, Blackhole blackhole) throws IOException, ClassNotFoundException {
+		ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(batch.serialized[batch.next()]));
+		blackhole.consume(input.readObject());
+		input.close();
+	}
+
+	/** Measure the {@code EventCodec}, the events being encoded by batches of {@code BATCH_SIZE}. The score is the time of one event.
+	 * @param batch - Events.
+	 * @param blackhole - Consumer of the bytes.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public void encodeEvents(Batch batch, Blackhole blackhole) throws IOException {
+		batch.bytes.reset();
+		DataOutputStream output = new DataOutputStream(batch.bytes);
+		EventCodec.writeEvents(batch.events, output);
+		output.flush();
+		blackhole.consume(batch.bytes.size());
+	}
+
+	/** Measure the {@code EventCodec}, the events being decoded by batches of {@code BATCH_SIZE}. The score is the time of one event.
+	 * @param batch - Events.
+	 * @param blackhole - Consumer of the events.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public void decodeEvents(Batch batch, Blackhole blackhole) throws IOException {
+		blackhole.consume(EventCodec.readEvents(new DataInputStream(new ByteArrayInputStream(batch.encoded))));
+	}
+}
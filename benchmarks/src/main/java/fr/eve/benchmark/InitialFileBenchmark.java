@@ -0,0 +1,129 @@
+package fr.eve.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fr.eve.client.Client;
+import fr.eve.client.EventListener;
+import fr.eve.server.Server;
+
+/** The {@code InitialFileBenchmark} class measures {@code Client.getInitialFile}, a client downloading the initial file of a server over the loopback with RMI.<br><br>
+ * The downloaded file is deleted before each call, so each operation is a full download.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InitialFileBenchmark {
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	/** Size of the initial file in bytes.
+	 */
+	@Param({"1048576", "67108864"})
+	public int fileSize;
+
+	/** Port of the server.
+	 */
+	@Param({"5200"})
+	public int port;
+
+	private File directory;
+	private File destination;
+	private Server server;
+	private Client client;
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Write the initial file, open the server and connect the client.
+	 * @throws Exception if the server could not be opened.
+	 */
+	@Setup
+	public void setUp() throws Exception {
+		directory = Benchmarks.createDirectory();
+		File initialFile = new File(directory, "initial.bin");
+		write(initialFile);
+		destination = new File(directory, "client");
+
+		server = new Server(port, "eve-benchmark", initialFile.getPath(), new File(directory, "events").getPath());
+		server.getLogger().setLogOn(false);
+		server.open();
+		client = new Client(new File(directory, "client.eve").getPath(), new EventListener() {
+			public void eventReceived(String event) {
+			}
+		});
+		client.connect("eve-benchmark", "127.0.0.1", port);
+		client.join();
+	}
+
+	/** Delete the downloaded file. A download lasts milliseconds, so the cost of a setup per call is not measured.
+	 */
+	@Setup(Level.Invocation)
+	public void setUpInvocation() {
+		Benchmarks.delete(destination);
+	}
+
+	/** Measure the download of the initial file.
+	 * @param blackhole - Consumer of the downloaded file.
+	 * @throws Exception if the file could not be downloaded.
+	 */
+	@Benchmark
+	public void getInitialFile(Blackhole blackhole) throws Exception {
+		File file = client.getInitialFile(destination.getPath());
+		if(file == null)
+			throw new IOException("The initial file could not be downloaded");
+		blackhole.consume(file);
+	}
+
+	/** Disconnect the client and close the server.
+	 * @throws Exception if the server could not be closed.
+	 */
+	@TearDown
+	public void tearDown() throws Exception {
+		client.disconnect();
+		server.close();
+		Benchmarks.delete(directory);
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void write(File file) throws IOException {
+		Random random = new Random(Benchmarks.SEED);
+		byte[] buffer = new byte[64 * 1024];
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			for(int written=0;written<fileSize;written+=buffer.length) {
+				random.nextBytes(buffer);
+				output.write(buffer, 0, Math.min(buffer.length, fileSize - written));
+			}
+		} finally {
+			output.close();
+		}
+	}
+}
@@ -0,0 +1,339 @@
+package fr.eve.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import fr.eve.client.ClientInterface;
+import fr.eve.server.Event;
+import fr.eve.server.EventCodec;
+import fr.eve.server.EventPage;
+import fr.eve.server.Server;
+import fr.eve.server.ServerInterface;
+import fr.eve.utils.Histogram;
+import fr.eve.utils.Threads;
+
+/** The {@code LoadTest} class opens a server and loads it with simulated clients, to measure its capacity before a deployment.<br><br>
+ * The {@code publishers} publish events of {@code payload} bytes at {@code rate} events per second each, the {@code subscribers} receive all the events,
+ * by long polling with {@code getEvents} or pushed by the server with {@code -mode push}. The simulated clients call the server in process,
+ * each one through a session of a distinct host opened with {@code Server.openLocalSession}, so hundreds of clients fit in one process
+ * and the transport is not measured. The server is opened as usual, its {@code ServerMetrics} can be read with JMX during the test.<br>
+ * Each event carries the time it was scheduled to be published, so the delivery latency includes the time the publisher waited for the server.
+ * Every {@code interval} seconds the throughput, the latency percentiles of the interval, the heap, the GC time, the platform threads
+ * and the readers waiting in {@code getEvents} are printed, and a summary is printed at the end. The latencies of the first {@code warmup} seconds are not counted. Usage:
+ * <pre>java -Xmx4g -cp benchmarks/target/benchmarks.jar fr.eve.benchmark.LoadTest [-publishers 10] [-subscribers 100] [-rate 100] [-payload 256] [-mode pull|push]
+ *     [-threads platform|virtual] [-duration 60] [-warmup 10] [-interval 5] [-port 5300]</pre>
+ * A {@code rate} of {@code 0} publishes as fast as the server accepts the events.<br>
+ * With {@code -threads virtual} the simulated clients and the server run on virtual threads, see {@code Threads.setVirtual}. On Java 21 or later,
+ * {@code -subscribers 50000 -publishers 1 -rate 1} parks 50 000 readers in {@code getEvents} while the number of platform threads stays near the number of CPUs.
+ * This only holds for the calls made in process or through the TCP transport: a reader calling {@code getEvents} through RMI holds a platform thread of RMI while it waits.
+ */
+public class LoadTest {
+
+	public static void main(String args[]) {
+		try {
+			Map<String, String> options = new LinkedHashMap<String, String>();
+			options.put("publishers", "10");
+			options.put("subscribers", "100");
+			options.put("rate", "100");
+			options.put("payload", "256");
+			options.put("mode", "pull");
+			options.put("threads", "platform");
+			options.put("duration", "60");
+			options.put("warmup", "10");
+			options.put("interval", "5");
+			options.put("port", "5300");
+			Benchmarks.parse(args, options);
+			Threads.setVirtual(options.get("threads").equals("virtual"));
+			if(Threads.isVirtual() != options.get("threads").equals("virtual"))
+				System.out.println("# virtual threads are not supported by this JVM, the platform threads are used");
+
+			LoadTest loadTest = new LoadTest(Integer.parseInt(options.get("publishers")), Integer.parseInt(options.get("subscribers")),
+					Integer.parseInt(options.get("rate")), Integer.parseInt(options.get("payload")), options.get("mode").equals("push"));
+			loadTest.run(Integer.parseInt(options.get("port")), Long.parseLong(options.get("duration")), Long.parseLong(options.get("warmup")), Long.parseLong(options.get("interval")));
+			System.exit(0);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Maximum number of events returned by a call to {@code getEvents}.
+	 */
+	public static final int PAGE_SIZE = 1000;
+
+	/** Maximum size of the events returned by a call to {@code getEvents}, in bytes.
+	 */
+	public static final int PAGE_BYTES = 1024 * 1024;
+
+	private static final String SENT = "{\"sent\":";
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private int publishers;
+	private int subscribers;
+	private int rate;
+	private int payload;
+	private boolean push;
+
+	private Server server;
+	private volatile boolean running;
+	private volatile boolean measuring;
+	private LongAdder published;
+	private LongAdder delivered;
+	private Histogram total;
+	private volatile Histogram current;
+	private List<Thread> publisherThreads;
+	private List<Thread> subscriberThreads;
+	private List<ServerInterface> clients;
+	private long maxHeap;
+	private int maxWaiters;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code LoadTest} class.
+	 * @param publishers - Number of publishers.
+	 * @param subscribers - Number of subscribers.
+	 * @param rate - Events published per second by each publisher, {@code 0} to publish as fast as possible.
+	 * @param payload - Size of an event, in bytes.
+	 * @param push - {@code true} if the events are pushed to the subscribers, {@code false} if the subscribers poll them.
+	 */
+	public LoadTest(int publishers, int subscribers, int rate, int payload, boolean push) {
+		this.publishers = publishers;
+		this.subscribers = subscribers;
+		this.rate = rate;
+		this.payload = payload;
+		this.push = push;
+		this.published = new LongAdder();
+		this.delivered = new LongAdder();
+		this.total = new Histogram();
+		this.current = new Histogram();
+		this.publisherThreads = new ArrayList<Thread>();
+		this.subscriberThreads = new ArrayList<Thread>();
+		this.clients = new CopyOnWriteArrayList<ServerInterface>();
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Run the load test and print its results.
+	 * @param port - Port of the server.
+	 * @param duration - Duration of the test, in seconds.
+	 * @param warmup - Time before the latencies are counted, in seconds.
+	 * @param interval - Time between two reports, in seconds.
+	 * @throws Exception if the server could not be opened or the clients could not connect.
+	 */
+	public void run(int port, long duration, long warmup, long interval) throws Exception {
+		File directory = Benchmarks.createDirectory();
+		server = new Server(port, "eve-load", "", new File(directory, "events").getPath());
+		server.getLogger().setLogOn(false);
+		server.open();
+		System.out.println(String.format(Locale.ROOT, "# %d publishers x %d events/s, %d %s subscribers on %s threads, %d bytes per event, %d s (%d s warmup), %d CPUs, %d MB heap",
+				publishers, rate, subscribers, push ? "push" : "pull", Threads.isVirtual() ? "virtual" : "platform", payload, duration, warmup,
+				Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory() >> 20));
+		running = true;
+		try {
+			for(int i=0;i<subscribers;i++)
+				startSubscriber(getHost(3, i));
+			for(int i=0;i<publishers;i++)
+				startPublisher(getHost(2, i), i);
+
+			long start = System.nanoTime();
+			long lastPublished = 0, lastDelivered = 0;
+			for(long elapsed=interval;elapsed<=duration;elapsed+=interval) {
+				long wait;
+				while((wait = start + elapsed * 1000000000L - System.nanoTime()) > 0)
+					Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+				if(!measuring && elapsed >= warmup) {
+					total = new Histogram();
+					measuring = true;
+				}
+				Histogram histogram = current;
+				current = new Histogram();
+				long publishedCount = published.sum(), deliveredCount = delivered.sum();
+				report(elapsed, (publishedCount - lastPublished) / interval, (deliveredCount - lastDelivered) / interval, histogram.snapshot());
+				lastPublished = publishedCount;
+				lastDelivered = deliveredCount;
+			}
+			running = false;
+			for(Thread thread:publisherThreads)
+				thread.join();
+			summary(duration);
+		} finally {
+			running = false;
+			for(ServerInterface client:clients)
+				disconnect(client);
+			for(Thread thread:subscriberThreads)
+				thread.join();
+			server.close();
+			Benchmarks.delete(directory);
+		}
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void startPublisher(String host, final int id) {
+		final ServerInterface client = server.openLocalSession(host);
+		clients.add(client);
+		Thread thread = Threads.newThread("eve-load-publisher-" + id, true, new Runnable() {
+			public void run() {
+				try {
+					client.connect();
+					StringBuilder padding = new StringBuilder();
+					while(padding.length() < payload - 48)
+						padding.append('x');
+					long period = rate == 0 ? 0 : 1000000000L / rate;
+					long scheduled = System.nanoTime();
+					while(running) {
+						long delay;
+						while((delay = scheduled - System.nanoTime()) > 0)
+							LockSupport.parkNanos(delay);
+						if(period == 0)
+							scheduled = System.nanoTime();
+						client.notifyEvent(SENT + scheduled + ",\"publisher\":" + id + ",\"data\":\"" + padding + "\"}");
+						published.increment();
+						scheduled += period;
+					}
+				} catch (Exception e) {
+					if(running)
+						e.printStackTrace();
+				}
+			}
+		});
+		publisherThreads.add(thread);
+		thread.start();
+	}
+
+	private void startSubscriber(String host) throws Exception {
+		final ServerInterface client = server.openLocalSession(host);
+		clients.add(client);
+		if(push) {
+			client.connect();
+			client.subscribe(new ClientInterface() {
+				public void notifyEvents(String channel, byte[] events) throws RemoteException {
+					try {
+						receive(EventCodec.fromBytes(events));
+					} catch (IOException e) {
+						throw new RemoteException("Events could not be decoded", e);
+					}
+				}
+			}, server.getSequence(null));
+			return;
+		}
+		Thread thread = Threads.newThread("eve-load-subscriber-" + host, true, new Runnable() {
+			public void run() {
+				try {
+					client.connect();
+					int cursor = server.getSequence(null);
+					while(running) {
+						EventPage page = client.getEvents(cursor, PAGE_SIZE, PAGE_BYTES);
+						receive(page.getEvents());
+						cursor = page.getNextCursor();
+					}
+				} catch (Exception e) {
+					if(running)
+						e.printStackTrace();
+				}
+			}
+		});
+		subscriberThreads.add(thread);
+		thread.start();
+	}
+
+	private void receive(List<Event> events) {
+		long now = System.nanoTime();
+		delivered.add(events.size());
+		if(!measuring)
+			return;
+		Histogram histogram = current;
+		for(Event event:events) {
+			long sent = getSent(event.getEvent());
+			if(sent != 0) {
+				total.record(now - sent);
+				histogram.record(now - sent);
+			}
+		}
+	}
+
+	private void report(long elapsed, long publishedRate, long deliveredRate, Histogram.Snapshot latency) {
+		long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		maxHeap = Math.max(maxHeap, heap);
+		int waiters = server.getMetrics().getWaitingReaders();
+		maxWaiters = Math.max(maxWaiters, waiters);
+		System.out.println(String.format(Locale.ROOT, "%6d s  published %,10d ev/s  delivered %,12d ev/s  latency us p50 %,8d p99 %,8d p999 %,8d max %,8d  heap %,6d MB  gc %,8d ms  threads %,6d  waiting %,7d",
+				elapsed, publishedRate, deliveredRate, latency.getP50(), latency.getP99(), latency.getP999(), latency.getMax(), heap >> 20, getGcTime(),
+				ManagementFactory.getThreadMXBean().getThreadCount(), waiters));
+	}
+
+	private void summary(long duration) {
+		Histogram.Snapshot latency = total.snapshot();
+		long publishedCount = published.sum();
+		long deliveredCount = delivered.sum();
+		System.out.println(String.format(Locale.ROOT, "# published %,d events (%,d ev/s for %,d ev/s asked), delivered %,d events (%,d ev/s, %.1f%% of the fan-out)",
+				publishedCount, publishedCount / duration, (long) publishers * rate, deliveredCount, deliveredCount / duration,
+				publishedCount == 0 || subscribers == 0 ? 0 : 100.0 * deliveredCount / publishedCount / subscribers));
+		System.out.println(String.format(Locale.ROOT, "# delivery latency us: p50 %,d  p99 %,d  p999 %,d  max %,d  mean %,d (%,d samples)",
+				latency.getP50(), latency.getP99(), latency.getP999(), latency.getMax(), latency.getMean(), latency.getCount()));
+		System.out.println("# server notify latency us: " + server.getMetrics().getNotifyLatency());
+		System.out.println("# server persistence latency us: " + server.getMetrics().getPersistenceLatency());
+		System.out.println(String.format(Locale.ROOT, "# max heap used %,d MB, gc time %,d ms", maxHeap >> 20, getGcTime()));
+		System.out.println(String.format(Locale.ROOT, "# peak platform threads %,d for %,d waiting readers at most", ManagementFactory.getThreadMXBean().getPeakThreadCount(), maxWaiters));
+	}
+
+	private void disconnect(ServerInterface client) {
+		try {
+			client.disconnect();
+		} catch (Exception e) {
+			//Never connected
+		}
+	}
+
+	private static String getHost(int group, int client) {
+		return "10." + group + "." + (client / 250) + "." + (1 + client % 250);
+	}
+
+	private static long getSent(String event) {
+		if(!event.startsWith(SENT))
+			return 0;
+		long sent = 0;
+		boolean negative = false;
+		for(int i=SENT.length();i<event.length();i++) {
+			char c = event.charAt(i);
+			if(c == '-')
+				negative = true;
+			else if(c >= '0' && c <= '9')
+				sent = sent * 10 + (c - '0');
+			else
+				break;
+		}
+		return negative ? -sent : sent;
+	}
+
+	private static long getGcTime() {
+		long time = 0;
+		for(GarbageCollectorMXBean collector:ManagementFactory.getGarbageCollectorMXBeans())
+			time += Math.max(collector.getCollectionTime(), 0);
+		return time;
+	}
+}
@@ -0,0 +1,242 @@
+package fr.eve.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fr.eve.server.Server;
+import fr.eve.server.ServerInterface;
+import fr.eve.utils.Threads;
+
+/** The {@code ServerBenchmarks} class holds the benchmarks of the server calls, made in process so the transport is not measured.<br><br>
+ * The calls of each reader are made through a session of a distinct host opened with {@code Server.openLocalSession}. The server logs are disabled.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ServerBenchmarks {
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Number of distinct payloads published by {@code notifyEvent}.
+	 */
+	public static final int NOTIFY_COUNT = 10000;
+
+	/** Number of events read by each reader in {@code getEvents}.
+	 */
+	public static final int HISTORY_SIZE = 100000;
+
+	/** Maximum number of events returned by a call to {@code getEvents}.
+	 */
+	public static final int PAGE_SIZE = 1000;
+
+	/** Maximum size of the events returned by a call to {@code getEvents}, in bytes.
+	 */
+	public static final int PAGE_BYTES = 1024 * 1024;
+
+	private static final String WRITER = "10.1.0.0";
+
+	/** The {@code Tail} class is a server whose channel is tailed by {@code readers} readers with {@code getEvents}.
+	 */
+	@State(Scope.Benchmark)
+	public static class Tail {
+
+		/** Number of readers tailing the channel.
+		 */
+		@Param({"0", "1", "4", "16"})
+		public int readers;
+
+		private File directory;
+		private Server server;
+		private ServerInterface writer;
+		private ServerInterface[] clients;
+		private String[] payloads;
+		private int next;
+		private List<Thread> threads;
+		private volatile boolean running;
+
+		/** Open the server and start the readers.
+		 * @throws Exception if the server could not be opened.
+		 */
+		@Setup
+		public void setUp() throws Exception {
+			directory = Benchmarks.createDirectory();
+			server = open(directory);
+			Random random = new Random(Benchmarks.SEED);
+			payloads = new String[NOTIFY_COUNT];
+			for(int i=0;i<payloads.length;i++)
+				payloads[i] = Benchmarks.newPayload(random);
+			writer = connect(server, WRITER);
+			running = true;
+			threads = new ArrayList<Thread>();
+			clients = new ServerInterface[readers];
+			for(int i=0;i<readers;i++) {
+				final ServerInterface client = connect(server, getReader(i));
+				clients[i] = client;
+				Thread thread = Threads.newThread("eve-benchmark-reader-" + i, true, new Runnable() {
+					public void run() {
+						try {
+							int cursor = 0;
+							while(running)
+								cursor = client.getEvents(cursor, PAGE_SIZE, PAGE_BYTES).getNextCursor();
+						} catch (Exception e) {
+							if(running)
+								e.printStackTrace();
+						}
+					}
+				});
+				threads.add(thread);
+				thread.start();
+			}
+		}
+
+		/** Stop the readers and close the server.
+		 * @throws Exception if the server could not be closed.
+		 */
+		@TearDown
+		public void tearDown() throws Exception {
+			running = false;
+			for(ServerInterface client:clients)
+				client.disconnect();
+			for(Thread thread:threads)
+				thread.join();
+			writer.disconnect();
+			server.close();
+			Benchmarks.delete(directory);
+		}
+	}
+
+	/** The {@code History} class is a server holding {@code HISTORY_SIZE} events, read by {@code readers} readers at the same time.<br>
+	 * The history is larger than the buffer of the server, so the oldest events are read from the log.
+	 */
+	@State(Scope.Benchmark)
+	public static class History {
+
+		/** Number of readers.
+		 */
+		@Param({"1", "4", "16"})
+		public int readers;
+
+		private File directory;
+		private Server server;
+		private ServerInterface writer;
+		private ServerInterface[] clients;
+		private ExecutorService executor;
+
+		/** Open the server and publish the history.
+		 * @throws Exception if the server could not be opened.
+		 */
+		@Setup
+		public void setUp() throws Exception {
+			directory = Benchmarks.createDirectory();
+			server = open(directory);
+			Random random = new Random(Benchmarks.SEED);
+			writer = connect(server, WRITER);
+			List<String> batch = new ArrayList<String>(PAGE_SIZE);
+			for(int i=0;i<HISTORY_SIZE;i++) {
+				batch.add(Benchmarks.newPayload(random));
+				if(batch.size() == PAGE_SIZE) {
+					writer.notifyEvents(batch);
+					batch.clear();
+				}
+			}
+			clients = new ServerInterface[readers];
+			for(int i=0;i<readers;i++)
+				clients[i] = connect(server, getReader(i));
+			executor = Threads.newExecutor("eve-benchmark-reader", readers);
+		}
+
+		/** Close the server.
+		 * @throws Exception if the server could not be closed.
+		 */
+		@TearDown
+		public void tearDown() throws Exception {
+			executor.shutdownNow();
+			for(ServerInterface client:clients)
+				client.disconnect();
+			writer.disconnect();
+			server.close();
+			Benchmarks.delete(directory);
+		}
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Measure {@code Server.notifyEvent} while the readers tail the channel.
+	 * @param tail - Tailed server.
+	 * @throws Exception if the event could not be published.
+	 */
+	@Benchmark
+	public void notifyEvent(Tail tail) throws Exception {
+		tail.writer.notifyEvent(tail.payloads[tail.next]);
+		tail.next = (tail.next + 1) % NOTIFY_COUNT;
+	}
+
+	/** Measure {@code Server.getEvents}, each reader reading the whole history by pages. The score is the time taken by all the readers.
+	 * @param history - Server holding the history.
+	 * @param blackhole - Consumer of the cursors.
+	 * @throws Exception if a reader failed.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void getEvents(History history, Blackhole blackhole) throws Exception {
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for(final ServerInterface client:history.clients) {
+			futures.add(history.executor.submit(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					int cursor = 0;
+					while(cursor < HISTORY_SIZE)
+						cursor = client.getEvents(cursor, PAGE_SIZE, PAGE_BYTES).getNextCursor();
+					return cursor;
+				}
+			}));
+		}
+		for(Future<Integer> future:futures)
+			blackhole.consume(future.get());
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private static Server open(File directory) throws Exception {
+		Server server = new Server(0, "eve-benchmark", "", new File(directory, "events").getPath());
+		server.getLogger().setLogOn(false);
+		return server;
+	}
+
+	private static String getReader(int reader) {
+		return "10.1." + (1 + reader / 250) + "." + (1 + reader % 250);
+	}
+
+	private static ServerInterface connect(Server server, String host) throws Exception {
+		ServerInterface client = server.openLocalSession(host);
+		client.connect();
+		return client;
+	}
+}
@@ -0,0 +1,196 @@
+package fr.eve.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import fr.eve.server.ServerInterface;
+import fr.eve.utils.Threads;
+
+/** The {@code AsyncPublisher} class is used to notify the server of events without waiting for the server.<br><br>
+ * The events are queued and a dispatcher thread sends them by batches: all the events queued while the previous batches are sent are coalesced in the next batch.
+ * At most {@code maxInFlight} batches are sent at the same time. Each batch is numbered and the server applies the batches of a client in order,
+ * so the events get their indexes in the order they were published.<br>
+ * Each event gets a future completed with its index, or completed exceptionally if its batch failed. After a failed batch the next batches
+ * wait for the batches in flight and start a new sequence.
+ */
+public class AsyncPublisher {
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Default maximum number of events sent in one batch.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/** Default maximum number of batches sent at the same time.
+	 */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private ServerInterface server;
+	private int batchSize;
+	private int maxInFlight;
+
+	private BlockingQueue<Pending> queue;
+	private Semaphore inFlight;
+	private ExecutorService senders;
+	private Thread dispatcher;
+	private int sequence;
+	private volatile boolean failed;
+	private volatile boolean closed;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code AsyncPublisher} class.
+	 * @param server - Server to notify.
+	 */
+	public AsyncPublisher(ServerInterface server) {
+		this(server, DEFAULT_BATCH_SIZE, DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	/** Builder of the {@code AsyncPublisher} class.
+	 * @param server - Server to notify.
+	 * @param batchSize - Maximum number of events sent in one batch.
+	 * @param maxInFlight - Maximum number of batches sent at the same time.
+	 */
+	public AsyncPublisher(ServerInterface server, int batchSize, int maxInFlight) {
+		this.server = server;
+		this.batchSize = batchSize;
+		this.maxInFlight = maxInFlight;
+		this.queue = new LinkedBlockingQueue<Pending>();
+		this.inFlight = new Semaphore(maxInFlight);
+		this.senders = Threads.newExecutor("eve-publisher-sender", maxInFlight);
+		this.dispatcher = Threads.newThread("eve-publisher", true, new Runnable() {
+			public void run() {
+				dispatch();
+			}
+		});
+		this.dispatcher.start();
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the number of events waiting to be sent.
+	 * @return Number of queued events.
+	 */
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Queue an event, without waiting for the server.
+	 * @param event - Event to notify.
+	 * @return Future completed with the index given to the event by the server.
+	 */
+	public CompletableFuture<Integer> publish(String event) {
+		CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+		if(closed)
+			future.completeExceptionally(new IllegalStateException("Publisher closed"));
+		else
+			queue.add(new Pending(event, future));
+		return future;
+	}
+
+	/** Send the queued events and wait for all the batches to be acknowledged.
+	 * @throws InterruptedException if any thread interrupted the current thread.
+	 */
+	public void flush() throws InterruptedException {
+		CompletableFuture<Integer> last = publish(null);
+		try {
+			last.get();
+		} catch (ExecutionException e) {
+			//The failed events were given their exception
+		}
+		inFlight.acquire(maxInFlight);	//The batches sent before may be acknowledged after the last one
+		inFlight.release(maxInFlight);
+	}
+
+	/** Send the queued events and stop the publisher.
+	 * @throws InterruptedException if any thread interrupted the current thread.
+	 */
+	public void close() throws InterruptedException {
+		flush();
+		closed = true;
+		dispatcher.interrupt();
+		senders.shutdown();
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void dispatch() {
+		while(!closed) {
+			final List<Pending> batch = new ArrayList<Pending>();
+			try {
+				batch.add(queue.take());
+				inFlight.acquire();
+				if(failed) {	//Start a new sequence once the previous one is over
+					inFlight.acquire(maxInFlight - 1);
+					inFlight.release(maxInFlight - 1);
+					failed = false;
+					sequence = 0;
+				}
+			} catch (InterruptedException e) {
+				for(Pending pending:batch)
+					pending.future.completeExceptionally(e);
+				return;
+			}
+			queue.drainTo(batch, batchSize - 1);
+			final int number = sequence++;
+			senders.execute(new Runnable() {
+				public void run() {
+					send(batch, number);
+				}
+			});
+		}
+	}
+
+	private void send(List<Pending> batch, int number) {
+		List<String> events = new ArrayList<String>(batch.size());
+		for(Pending pending:batch)
+			if(pending.event != null)
+				events.add(pending.event);
+		try {
+			int index = server.notifyEvents(events, number);
+			for(Pending pending:batch)
+				pending.future.complete(pending.event == null ? index : index++);
+		} catch (Exception e) {
+			failed = true;
+			for(Pending pending:batch)
+				pending.future.completeExceptionally(e);
+		} finally {
+			inFlight.release();
+		}
+	}
+
+	/** Event waiting to be sent, with its future.
+	 */
+	private static class Pending {
+
+		private String event;
+		private CompletableFuture<Integer> future;
+
+		private Pending(String event, CompletableFuture<Integer> future) {
+			this.event = event;
+			this.future = future;
+		}
+	}
+}
@@ -1,26 +1,87 @@
 package fr.eve.client;
 
-import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.MalformedURLException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.server.ServerNotActiveException;
+import java.rmi.server.UnicastRemoteObject;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
+import fr.eve.dao.CursorDAO;
 import fr.eve.dao.EventDAO;
-import fr.eve.rmi.RMIClient;
+import fr.eve.dao.InitialFilesDAO;
 import fr.eve.server.AlreadyConnectedException;
 import fr.eve.server.AlreadyDisconnectedException;
 import fr.eve.server.Event;
+import fr.eve.server.EventCodec;
+import fr.eve.server.EventFilter;
+import fr.eve.server.EventPage;
+import fr.eve.server.FileChunk;
+import fr.eve.server.InitialFile;
+import fr.eve.server.Server;
 import fr.eve.server.ServerInterface;
+import fr.eve.server.StateSnapshot;
+import fr.eve.transport.Transport;
+import fr.eve.utils.Threads;
 
-/** The {@code Client} class is used to manage Eve clients.
+/** The {@code Client} class is used to manage Eve clients.<br><br>
+ * The client keeps a cursor, the index of the next event to read, checkpointed in the background in {@code eventFileName.cursor}.
+ * A client which crashed resumes from its last checkpoint, and a client which lost the server connects again and resumes from its cursor.<br>
+ * A new client of a server folding its events with a {@code Reducer} calls {@code getState} before joining: it applies the state and only reads the events published after it.
  */
 public class Client{
 	
+	/** Maximum number of events asked to the server in one call.
+	 */
+	public static final int PAGE_SIZE = 1000;
+
+	/** Maximum size of the events asked to the server in one call, in bytes.
+	 */
+	public static final int PAGE_BYTES = 1024 * 1024;
+
+	/** Length of the chunks asked to the server when downloading an initial file.
+	 */
+	public static final int CHUNK_SIZE = 1024 * 1024;
+
+	/** Number of times a corrupted chunk is asked again before giving up.
+	 */
+	public static final int CHUNK_RETRIES = 3;
+
+	/** Name of the file in which the hash of the downloaded initial files is cached, in the destination folder.
+	 */
+	public static final String MANIFEST_FILE_NAME = ".eve.manifest";
+
+	/** Extension of the file in which the cursor is checkpointed, after the event file name.
+	 */
+	public static final String CURSOR_FILE_EXTENSION = ".cursor";
+
+	/** Default number of events read before the cursor is checkpointed.
+	 */
+	public static final int CHECKPOINT_EVENTS = 1000;
+
+	/** Default maximum time between two checkpoints of the cursor, in milliseconds.
+	 */
+	public static final long CHECKPOINT_INTERVAL = 1000;
+
+	/** Time to wait before connecting again to a server which failed, in milliseconds. It doubles after each failed attempt.
+	 */
+	public static final long RECONNECT_DELAY = 500;
+
+	/** Maximum time to wait before connecting again to a server which failed, in milliseconds.
+	 */
+	public static final long MAX_RECONNECT_DELAY = 30000;
+
 	/***************/
 	/** ATTRIBUTS **/
 	/***************/
@@ -28,25 +89,61 @@ public class Client{
 	private String eventFileName;
 	private EventListener eventListener;
 	private Event lastEvent;
-	private ServerInterface server;
+	private CursorCheckpointer checkpointer;
+	private volatile ServerInterface server;
+	private Transport transport;
+	private String serverName;
+	private String serverIp;
+	private int serverPort;
+	private ClientInterface callback;
+	private ClientInterface stub;
+	private Map<String, EventListener> channelListeners;
+	private AsyncPublisher publisher;
 	
 	private boolean connected;
-	private String ip;
+	private volatile String session;
+	private Set<String> sessions;
 
 	/*************/
 	/** BUILDER **/
 	/*************/
 
-	/** Builder of the {@code Client} class.
+	/** Builder of the {@code Client} class.<br>
+	 * The cursor is checkpointed every {@code CHECKPOINT_EVENTS} events or {@code CHECKPOINT_INTERVAL} milliseconds.
 	 * @param eventFileName - The event file in which store all the events.
 	 * @param eventListener - Method called when a new event occurs.
 	 * @throws IOException if an I/O error occurs.
 	 * @throws ClassNotFoundException if class of a serialized object cannot be found.
 	 */
-	public Client(String eventFileName, EventListener eventListener) throws ClassNotFoundException, IOException {		
+	public Client(String eventFileName, EventListener eventListener) throws ClassNotFoundException, IOException {
+		this(eventFileName, eventListener, CHECKPOINT_EVENTS, CHECKPOINT_INTERVAL);
+	}
+
+	/** Builder of the {@code Client} class.<br>
+	 * The cursor is read from {@code eventFileName.cursor}. The last event saved in {@code eventFileName} by a previous version is used the first time.
+	 * @param eventFileName - The event file in which store all the events.
+	 * @param eventListener - Method called when a new event occurs.
+	 * @param checkpointEvents - Number of events read before the cursor is checkpointed.
+	 * @param checkpointInterval - Maximum time between two checkpoints of the cursor, in milliseconds.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws ClassNotFoundException if class of a serialized object cannot be found.
+	 */
+	public Client(String eventFileName, EventListener eventListener, int checkpointEvents, long checkpointInterval) throws ClassNotFoundException, IOException {
 		this.eventFileName = eventFileName;
 		this.eventListener = eventListener;
-		this.lastEvent = new EventDAO(eventFileName).find();
+		CursorDAO cursorDAO = new CursorDAO(eventFileName + CURSOR_FILE_EXTENSION);
+		int cursor;
+		if(cursorDAO.exists())
+			cursor = cursorDAO.find();
+		else {
+			Event lastEvent = new File(eventFileName).isFile() ? new EventDAO(eventFileName).find() : null;
+			cursor = lastEvent == null ? 0 : lastEvent.getIndex()+1;
+			cursorDAO.update(cursor);
+			cursorDAO.close();
+		}
+		this.checkpointer = new CursorCheckpointer(cursorDAO, cursor, checkpointEvents, checkpointInterval);
+		this.channelListeners = new ConcurrentHashMap<String, EventListener>();
+		this.sessions = ConcurrentHashMap.newKeySet();
 		this.connected = false;
 	}
 
@@ -75,18 +172,122 @@ public class Client{
 		return server;
 	}
 	
-	/** Get all the events.
-	 * @return Events list.
+	/** Get the session of the client, which is the author of the events it publishes.
+	 * @return Session identifier, {@code null} if the client never joined the server.
+	 */
+	public String getSession() {
+		return session;
+	}
+
+	/** Get the last event received since the client was created.
+	 * @return Last event, {@code null} if no event was received.
 	 */
 	public Event getLastEvent() {
 		return lastEvent;
 	}
 
+	/** Get the cursor of the default channel.
+	 * @return Index of the next event to read.
+	 */
+	public int getCursor() {
+		return checkpointer.getCursor();
+	}
+
+	/** Get the checkpointed cursor of the default channel.
+	 * @return Index of the next event to read after a crash.
+	 */
+	public int getSavedCursor() {
+		return checkpointer.getSavedCursor();
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private FileChunk getChunk(String fileName, long offset, int length) throws IOException {
+		FileChunk chunk = null;
+		for(int i=0;i<CHUNK_RETRIES && (chunk == null || !chunk.isValid());i++)
+			chunk = server.getInitialFileChunk(fileName, offset, length);
+		if(chunk == null || !chunk.isValid())
+			throw new IOException("Chunk " + offset + " of " + fileName + " could not be downloaded");
+		return chunk;
+	}
+
+	private InitialFile synchronize(InitialFile initialFile, InitialFile current, File file) throws IOException {
+		if(current != null)
+			update(initialFile, current, file);
+		else
+			download(initialFile.getFileName(), file);
+		current = InitialFile.hash(initialFile.getFileName(), file);
+		if(initialFile.hasSameContent(current))
+			return current;
+
+		new File(file.getPath() + ".part").delete();	//Corrupted partial download, start again from scratch
+		download(initialFile.getFileName(), file);
+		current = InitialFile.hash(initialFile.getFileName(), file);
+		if(!initialFile.hasSameContent(current))
+			throw new IOException(file + " does not match the manifest");
+		return current;
+	}
+
+	private void update(InitialFile initialFile, InitialFile current, File file) throws IOException {
+		File part = new File(file.getPath() + ".part");
+		Files.copy(file.toPath(), part.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		RandomAccessFile output = new RandomAccessFile(part, "rw");
+		try {
+			output.setLength(initialFile.getSize());
+			for(int block=0;block<initialFile.getBlockHashes().size();block++) {
+				if(initialFile.hasSameBlock(current, block))
+					continue;
+				long offset = (long) block * InitialFile.BLOCK_SIZE;
+				long end = Math.min(offset + InitialFile.BLOCK_SIZE, initialFile.getSize());
+				while(offset < end) {
+					FileChunk chunk = getChunk(initialFile.getFileName(), offset, (int) Math.min(CHUNK_SIZE, end - offset));
+					if(chunk.getData().length == 0)
+						throw new IOException(initialFile.getFileName() + " changed during the update");
+					output.seek(offset);
+					output.write(chunk.getData());
+					offset += chunk.getData().length;
+				}
+			}
+		} finally {
+			output.close();
+		}
+		Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private void download(String fileName, File file) throws IOException {
+		File part = new File(file.getPath() + ".part");
+		file.getParentFile().mkdirs();
+		long offset = part.length();
+		FileOutputStream output = new FileOutputStream(part, true);
+		try {
+			while(true) {
+				FileChunk chunk = getChunk(fileName, offset, CHUNK_SIZE);
+				if(offset > chunk.getFileLength()) {	//The file changed since the partial download
+					output.getChannel().truncate(0);
+					offset = 0;
+					continue;
+				}
+				output.write(chunk.getData());
+				offset += chunk.getData().length;
+				if(chunk.isLast())
+					break;
+			}
+		} finally {
+			output.close();
+		}
+		if(file.exists())
+			file.delete();
+		if(!part.renameTo(file))
+			throw new IOException(part + " could not be renamed");
+	}
+
 	/********************/
 	/** PUBLIC METHODS **/
 	/********************/
 
-	/** Connection to a server.
+	/** Connection to a server with RMI.
 	 * @param name - Server name.
 	 * @param ip - Server ip.
 	 * @param port - Server port.
@@ -97,10 +298,33 @@ public class Client{
 	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
 	 */
 	public void connect(String name, String ip, int port) throws MalformedURLException, RemoteException, NotBoundException, AlreadyConnectedException, ServerNotActiveException {
-		server = (ServerInterface) RMIClient.getInterface(ip, port, name);	//Get server object
+		connect(Transport.RMI, name, ip, port);
+	}
+
+	/** Connection to a server.
+	 * @param transport - Transport used to call the server.
+	 * @param name - Server name.
+	 * @param ip - Server ip.
+	 * @param port - Server port.
+	 * @throws NotBoundException if name is not currently bound.
+	 * @throws RemoteException if the registry could not be exported or contacted.
+	 * @throws MalformedURLException if the name is not an appropriately formatted URL.
+	 * @throws AlreadyConnectedException if the user is already connected to the network.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public void connect(Transport transport, String name, String ip, int port) throws MalformedURLException, RemoteException, NotBoundException, AlreadyConnectedException, ServerNotActiveException {
+		server = transport.connect(ip, port, name);	//Get server object
+		this.transport = transport;
+		this.serverName = name;
+		this.serverIp = ip;
+		this.serverPort = port;
 	}
 	
-	/** Get the initial file.
+	/** Get the initial file.<br>
+	 * Only the missing or changed files are downloaded: the hash of the local files is compared with the server manifest and cached in {@code MANIFEST_FILE_NAME}.
+	 * A file which changed is updated block by block, only the blocks whose hash differs are downloaded.<br>
+	 * The files are streamed to the disk by chunks of {@code CHUNK_SIZE} bytes, each chunk is checked with its checksum.
+	 * A file is first written as {@code fileName.part}, a download interrupted by a failure resumes from the end of this file on the next call.
 	 * @param directoryName - Destination folder.
 	 * @return Initial file.
 	 * @throws RemoteException if the registry could not be exported or contacted.
@@ -114,34 +338,53 @@ public class Client{
 		if(!directory.exists())
 			directory.mkdirs();
 		
-		List<String> fileNames = server.getInitialFiles();
-		if(fileNames.isEmpty())
+		List<InitialFile> initialFiles = server.getInitialFilesManifest();
+		if(initialFiles.isEmpty())
 			return null;
 		
 		try {
-			for(String fileName:fileNames) {
-				byte[] data = server.getInitialFile(fileName);
-				File file = new File(directoryName, fileName);
-				if(file.exists())
-					file.delete();
-				file.getParentFile().mkdirs();
-				BufferedOutputStream output = new BufferedOutputStream(new FileOutputStream(file));
-				output.write(data,0,data.length);
-				output.flush();
-				output.close();
-				file.createNewFile();
+			InitialFilesDAO manifestDAO = new InitialFilesDAO(new File(directory, MANIFEST_FILE_NAME).getPath());
+			Map<String, InitialFile> manifest = manifestDAO.find();
+			for(InitialFile initialFile:initialFiles) {
+				File file = new File(directoryName, initialFile.getFileName());
+				InitialFile current = manifest.get(initialFile.getFileName());
+				if(current == null || !current.isUpToDate(file))
+					current = file.isFile() ? InitialFile.hash(initialFile.getFileName(), file) : null;
+				if(!initialFile.hasSameContent(current))
+					current = synchronize(initialFile, current, file);
+				manifest.put(initialFile.getFileName(), current);
 			}
-		} catch (IOException e) {
+			manifestDAO.update(manifest);
+		} catch (IOException | ClassNotFoundException e) {
 			return null;
 		}
 
-		File parent = new File(fileNames.get(0));
+		File parent = new File(initialFiles.get(0).getFileName());
 		while(parent.getParentFile() != null) {
 			parent = parent.getParentFile();
 		}
 		return new File(directoryName, parent.getPath());
 	}
 	
+	/** Get the state of the default channel folded by the server, and move the cursor after the events it covers.<br>
+	 * Call this method before {@code join} or {@code subscribe}, the events already folded into the state are then skipped.
+	 * The state is ignored if the cursor is already after it, so a client which applied the events itself keeps its own state.
+	 * @return State snapshot, to decode with the reducer of the server, {@code null} if the server has no state after the cursor.
+	 * @throws NotConnectedException if you are not connected to the network yet. Call the {@code connect} method first.
+	 * @throws IOException if the registry could not be exported or contacted, or if the cursor could not be saved.
+	 */
+	public StateSnapshot getState() throws NotConnectedException, IOException {
+		if(server == null)
+			throw new NotConnectedException();
+
+		StateSnapshot state = server.getState(Server.DEFAULT_CHANNEL);
+		if(state == null || state.getIndex() <= checkpointer.getCursor())
+			return null;
+		checkpointer.advance(state.getIndex());
+		checkpointer.save();
+		return state;
+	}
+
 	/** Notify the server of an event.
 	 * @param event - Event to notify.
 	 * @throws NotConnectedException if you are not connected to the network yet. Call the {@code connect} method first.
@@ -154,8 +397,54 @@ public class Client{
 		
 		server.notifyEvent(event);
 	}
+
+	/** Notify the server of a batch of events, in a single call.
+	 * @param events - Events to notify, in order.
+	 * @return Index given by the server to the first event.
+	 * @throws NotConnectedException if you are not connected to the network yet. Call the {@code connect} method first.
+	 * @throws RemoteException if the registry could not be exported or contacted.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public int notifyEvents(List<String> events) throws NotConnectedException, RemoteException, ServerNotActiveException {
+		if(server == null)
+			throw new NotConnectedException();
+
+		return server.notifyEvents(events);
+	}
+
+	/** Notify the server of an event on a channel.
+	 * @param channel - Name of the channel, created by the server the first time.
+	 * @param event - Event to notify.
+	 * @throws NotConnectedException if you are not connected to the network yet. Call the {@code connect} method first.
+	 * @throws RemoteException if the registry could not be exported or contacted, or if the channel could not be opened.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public void notifyEvent(String channel, String event) throws NotConnectedException, RemoteException, ServerNotActiveException {
+		if(server == null)
+			throw new NotConnectedException();
+
+		server.notifyEvent(channel, event);
+	}
 	
-	/** Disconnection from the server.
+	/** Notify the server of an event, without waiting for the server.<br>
+	 * The events are sent by an {@code AsyncPublisher}, in order, coalesced in batches.
+	 * @param event - Event to notify.
+	 * @return Future completed with the index given to the event by the server.
+	 * @throws NotConnectedException if you are not connected to the network yet. Call the {@code connect} method first.
+	 */
+	public CompletableFuture<Integer> notifyEventAsync(String event) throws NotConnectedException {
+		if(server == null)
+			throw new NotConnectedException();
+
+		synchronized(this) {
+			if(publisher == null)
+				publisher = new AsyncPublisher(server);
+		}
+		return publisher.publish(event);
+	}
+
+	/** Disconnection from the server.<br>
+	 * The events notified with {@code notifyEventAsync} are sent first.
 	 * @throws NotConnectedException if you are not connected to the network yet. Call the {@code connect} method first.
 	 * @throws IOException if an I/O error occurs.
 	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
@@ -165,30 +454,174 @@ public class Client{
 		if(server == null)
 			throw new NotConnectedException();
 
+		if(publisher != null) {
+			try {
+				publisher.close();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			publisher = null;
+		}
 		connected = false;
 		server.disconnect();			//Notify disconnection to the server
+		if(callback != null) {
+			UnicastRemoteObject.unexportObject(callback, true);
+			callback = null;
+			stub = null;
+			channelListeners.clear();
+		}
+		if(server instanceof Closeable)
+			((Closeable) server).close();
 		server = null;
-		new EventDAO(eventFileName).update(lastEvent);	//Save the events
+		checkpointer.stop();	//Save the cursor
 	}
 	
+	/** Join the network and start listening to the events.<br>
+	 * The events missed since the cursor are downloaded by pages of {@code PAGE_SIZE} events or {@code PAGE_BYTES} bytes.
+	 * The events of the client itself are filtered out by the server, so they are not downloaded.
+	 * The listener runs on a virtual thread when {@code Threads.isVirtual}. When the server fails, the listener connects again
+	 * and resumes from the cursor.
+	 * @throws RemoteException if the registry could not be exported or contacted.
+	 * @throws AlreadyConnectedException if the user is already connected to the network.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
 	public void join() throws RemoteException, AlreadyConnectedException, ServerNotActiveException {
-		this.ip = this.server.connect();
+		join(server);
 		connected = true;
-		Thread listener = new Thread(new Runnable() {
+		checkpointer.start();
+		Thread listener = Threads.newThread("eve-listener", false, new Runnable() {
 			public void run() {
 				while(connected) {
 					try {
-						for(Event event:server.getEvents(lastEvent)){
+						EventFilter others = new EventFilter().excludeAuthors(sessions.toArray(new String[0]));	//Sessions of the previous connections included
+						EventPage page = server.getEvents(Server.DEFAULT_CHANNEL, checkpointer.getCursor(), PAGE_SIZE, PAGE_BYTES, others);
+						for(Event event:page.getEvents()){
 							lastEvent = event;
-							if(!event.getAuthor().equals(ip))
-								eventListener.eventReceived(event.getEvent());
+							eventListener.eventReceived(event.getEvent());
 						}
-					} catch (RemoteException | InterruptedException | ServerNotActiveException e) {
-						e.printStackTrace();
+						checkpointer.advance(page.getNextCursor());
+					} catch (RemoteException e) {
+						if(connected)
+							reconnect();
+					} catch (InterruptedException | ServerNotActiveException e) {
+						if(connected)
+							e.printStackTrace();
 					}
 				}
 			}
 		});
 		listener.start();
 	}
+
+	/** Join the network and let the server push the events.<br>
+	 * The events missed since the last event are pushed first, then the new events as they are published. No thread waits for the events on the client.
+	 * The events of the client itself are filtered out by the server.
+	 * @throws RemoteException if the registry could not be exported or contacted.
+	 * @throws AlreadyConnectedException if the user is already connected to the network.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public void subscribe() throws RemoteException, AlreadyConnectedException, ServerNotActiveException {
+		join(server);
+		connected = true;
+		checkpointer.start();
+		server.subscribe(Server.DEFAULT_CHANNEL, getCallback(), checkpointer.getCursor(), new EventFilter().excludeSelf());
+	}
+
+	/** Let the server push the events of another channel, except the events of the client itself.<br>
+	 * The events of the channel are given to their own listener, the last event is only kept for the default channel.
+	 * @param channel - Name of the channel.
+	 * @param cursor - Index of the first event to push in the channel, {@code 0} to get the whole history.
+	 * @param listener - Listener of the events of the channel.
+	 * @throws NotConnectedException if you are not connected to the network yet. Call the {@code subscribe} method first.
+	 * @throws RemoteException if the registry could not be exported or contacted, or if the channel could not be opened.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public void subscribe(String channel, int cursor, EventListener listener) throws NotConnectedException, RemoteException, ServerNotActiveException {
+		if(!connected)
+			throw new NotConnectedException();
+
+		subscribe(channel, cursor, new EventFilter().excludeSelf(), listener);
+	}
+
+	/** Let the server push the events of a channel accepted by a filter.<br>
+	 * The filter is checked by the server, so the rejected events are not sent to the client.
+	 * @param channel - Name of the channel.
+	 * @param cursor - Index of the first event to push in the channel, {@code 0} to get the whole history.
+	 * @param filter - Events to push, {@code null} to push all the events.
+	 * @param listener - Listener of the events of the channel.
+	 * @throws NotConnectedException if you are not connected to the network yet. Call the {@code subscribe} method first.
+	 * @throws RemoteException if the registry could not be exported or contacted, or if the channel could not be opened.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public void subscribe(String channel, int cursor, EventFilter filter, EventListener listener) throws NotConnectedException, RemoteException, ServerNotActiveException {
+		if(!connected)
+			throw new NotConnectedException();
+
+		channelListeners.put(channel, listener);
+		server.subscribe(channel, getCallback(), cursor, filter);
+	}
+
+	private void join(ServerInterface server) throws RemoteException, AlreadyConnectedException, ServerNotActiveException {
+		session = server.connect();
+		sessions.add(session);
+	}
+
+	private void reconnect() {
+		long delay = RECONNECT_DELAY;
+		while(connected) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				return;
+			}
+			ServerInterface previous = server;
+			try {
+				ServerInterface server = transport.connect(serverIp, serverPort, serverName);
+				try {
+					join(server);
+				} catch (AlreadyConnectedException e) {
+					//The server did not notice the failure
+				}
+				this.server = server;
+			} catch (RemoteException | NotBoundException | ServerNotActiveException e) {
+				delay = Math.min(delay * 2, MAX_RECONNECT_DELAY);
+				continue;
+			}
+			if(previous instanceof Closeable) {
+				try {
+					((Closeable) previous).close();
+				} catch (IOException e) {
+					//Already closed
+				}
+			}
+			return;
+		}
+	}
+
+	private synchronized ClientInterface getCallback() throws RemoteException {
+		if(stub == null) {
+			callback = new ClientInterface() {
+				public void notifyEvents(String channel, byte[] bytes) throws RemoteException {
+					List<Event> events;
+					try {
+						events = EventCodec.fromBytes(bytes);
+					} catch (IOException e) {
+						throw new RemoteException("Events of " + channel + " could not be decoded", e);
+					}
+					boolean main = channel.equals(Server.DEFAULT_CHANNEL);
+					EventListener listener = main ? eventListener : channelListeners.get(channel);
+					for(Event event:events) {
+						if(listener != null)
+							listener.eventReceived(event.getEvent());
+						if(main) {
+							lastEvent = event;
+							checkpointer.advance(event.getIndex()+1);
+						}
+					}
+				}
+			};
+			stub = (ClientInterface) UnicastRemoteObject.exportObject(callback, 0);
+		}
+		return stub;
+	}
 }
@@ -6,9 +6,11 @@ import java.rmi.RemoteException;
  */
 public interface ClientInterface extends java.rmi.Remote {
 	
-	/** Notify the client of an event.
-	 * @param event - Event to notify.
-	 * @throws RemoteException if the registry could not be exported or contacted.
+	/** Notify the client of new events.<br>
+	 * The events are encoded by {@code EventCodec.toBytes}, each one relative to the previous one, so a batch costs a few bytes per event on top of the payloads.
+	 * @param channel - Name of the channel of the events.
+	 * @param events - Events to notify, in index order, decoded by {@code EventCodec.fromBytes}.
+	 * @throws RemoteException if the registry could not be exported or contacted, or if the events could not be decoded.
 	 */
-	public void notifyEvent(String event) throws RemoteException;
+	public void notifyEvents(String channel, byte[] events) throws RemoteException;
 }
@@ -0,0 +1,135 @@
+package fr.eve.client;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import fr.eve.dao.CursorDAO;
+import fr.eve.utils.Threads;
+
+/** The {@code CursorCheckpointer} class saves the cursor of a client in the background.<br><br>
+ * Moving the cursor only writes a volatile field. The cursor is saved by a background thread every {@code interval} milliseconds,
+ * and as soon as it moved {@code events} events past the saved cursor. After a crash the client resumes from the last saved cursor,
+ * so at most the events read since the last checkpoint are received again.
+ */
+class CursorCheckpointer {
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private CursorDAO cursorDAO;
+	private int events;
+	private long interval;
+
+	private volatile int cursor;
+	private volatile int saved;
+	private AtomicBoolean pending;
+	private volatile ScheduledExecutorService scheduler;
+	private Runnable checkpoint;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code CursorCheckpointer} class.
+	 * @param cursorDAO - Cursor file.
+	 * @param cursor - Saved cursor.
+	 * @param events - Number of events read before the cursor is saved.
+	 * @param interval - Maximum time between two checkpoints, in milliseconds.
+	 */
+	CursorCheckpointer(CursorDAO cursorDAO, int cursor, int events, long interval) {
+		this.cursorDAO = cursorDAO;
+		this.cursor = cursor;
+		this.saved = cursor;
+		this.events = events;
+		this.interval = interval;
+		this.pending = new AtomicBoolean();
+		this.checkpoint = new Runnable() {
+			public void run() {
+				pending.set(false);
+				try {
+					save();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the cursor.
+	 * @return Index of the next event to read.
+	 */
+	int getCursor() {
+		return cursor;
+	}
+
+	/** Get the saved cursor.
+	 * @return Index of the next event to read after a crash.
+	 */
+	int getSavedCursor() {
+		return saved;
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Move the cursor after a read event.
+	 * @param cursor - Index of the next event to read.
+	 */
+	void advance(int cursor) {
+		if(cursor <= this.cursor)
+			return;
+		this.cursor = cursor;
+		if(cursor - saved >= events && scheduler != null && pending.compareAndSet(false, true))
+			scheduler.execute(checkpoint);
+	}
+
+	/** Start saving the cursor in the background.
+	 */
+	synchronized void start() {
+		if(scheduler != null)
+			return;
+		scheduler = Executors.newSingleThreadScheduledExecutor(Threads.newFactory("eve-checkpoint", true));
+		scheduler.scheduleWithFixedDelay(checkpoint, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/** Stop the background thread and save the cursor.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	void stop() throws IOException {
+		ScheduledExecutorService scheduler;
+		synchronized(this) {
+			scheduler = this.scheduler;
+			this.scheduler = null;
+		}
+		if(scheduler != null) {
+			scheduler.shutdown();
+			try {
+				scheduler.awaitTermination(interval, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		save();
+		cursorDAO.close();
+	}
+
+	/** Save the cursor now, if it moved since the last checkpoint.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	synchronized void save() throws IOException {
+		int cursor = this.cursor;
+		if(cursor == saved)
+			return;
+		cursorDAO.update(cursor);
+		saved = cursor;
+	}
+}
@@ -0,0 +1,121 @@
+package fr.eve.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/** The {@code CursorDAO} class is used to save the cursor of a client: the index of the next event to read.<br><br>
+ * The file holds two slots of {@code SLOT_SIZE} bytes, each one made of a generation, a cursor and the CRC32 of both.
+ * The slots are written in turn, so a write torn by a crash leaves the other slot intact, and the valid slot with the latest generation is read.
+ */
+public class CursorDAO {
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Size of a slot of the cursor file in bytes.
+	 */
+	public static final int SLOT_SIZE = 16;
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private File cursorFile;
+	private FileChannel channel;
+	private long generation;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code CursorDAO} class.
+	 * @param cursorFileName - Name of the cursor file.
+	 */
+	public CursorDAO(String cursorFileName) {
+		this.cursorFile = new File(cursorFileName);
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Check if a cursor was saved.
+	 * @return {@code true} if the cursor file exists, {@code false} otherwise.
+	 */
+	public boolean exists() {
+		return cursorFile.isFile();
+	}
+
+	/** Get the saved cursor.
+	 * @return Index of the next event to read, {@code 0} if no cursor was saved.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public synchronized int find() throws IOException {
+		if(!exists())
+			return 0;
+		ByteBuffer buffer = ByteBuffer.allocate(2 * SLOT_SIZE);
+		FileChannel input = FileChannel.open(cursorFile.toPath(), StandardOpenOption.READ);
+		try {
+			while(buffer.hasRemaining() && input.read(buffer) >= 0);
+		} finally {
+			input.close();
+		}
+		int cursor = 0;
+		generation = 0;
+		for(int slot=0;slot<2;slot++) {
+			if(buffer.position() < (slot + 1) * SLOT_SIZE)
+				break;
+			long slotGeneration = buffer.getLong(slot * SLOT_SIZE);
+			int slotCursor = buffer.getInt(slot * SLOT_SIZE + 8);
+			if(buffer.getInt(slot * SLOT_SIZE + 12) == checksum(slotGeneration, slotCursor) && slotGeneration > generation) {
+				generation = slotGeneration;
+				cursor = slotCursor;
+			}
+		}
+		return cursor;
+	}
+
+	/** Save the cursor and force it on the disk.
+	 * @param cursor - Index of the next event to read.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public synchronized void update(int cursor) throws IOException {
+		if(channel == null) {
+			if(generation == 0)
+				find();
+			channel = FileChannel.open(cursorFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		}
+		generation++;
+		ByteBuffer buffer = ByteBuffer.allocate(SLOT_SIZE);
+		buffer.putLong(generation).putInt(cursor).putInt(checksum(generation, cursor)).flip();
+		long position = (generation % 2) * SLOT_SIZE;
+		while(buffer.hasRemaining())
+			position += channel.write(buffer, position);
+		channel.force(false);
+	}
+
+	/** Close the cursor file, it is opened again by the next update.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public synchronized void close() throws IOException {
+		if(channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private static int checksum(long generation, int cursor) {
+		CRC32 crc = new CRC32();
+		crc.update(ByteBuffer.allocate(12).putLong(generation).putInt(cursor).array());
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,662 @@
+package fr.eve.dao;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import fr.eve.server.Event;
+import fr.eve.server.EventCodec;
+
+/** The {@code EventLogDAO} class is used to manage a segmented append-only log of {@code Event} objects.<br><br>
+ * Each event is appended at the end of the current segment as soon as it is published, so a save costs O(1) per event.
+ * A segment is named after the index of its first event and a new one is started when the current one is full.
+ * Each record is written as {@code [length][crc32][event]} so a torn record left by a crash is detected and cut on replay.
+ * The event is encoded by an {@code EventCodec} whose author dictionary is saved in the {@code authors} file of the log.
+ * The dictionary is bounded by {@code EventCodec.DEFAULT_MAX_AUTHORS}, the authors seen once it is full are written inline in their records.<br><br>
+ * The segments are memory-mapped and the events are not kept on the heap: a read from any index is a bounded range scan over the mapped pages.
+ * The decoded events of the last read pages of {@code PAGE_SIZE} events are kept in a {@code PageCache} bounded in bytes,
+ * so the readers catching up on the same part of the history decode it once.
+ * There is a single writer, serialized by a {@code ReentrantLock} so a writer on a virtual thread does not pin its carrier while it forces the disk,
+ * and the readers never lock, they only see the events published before their call.<br><br>
+ * A snapshot of the sparse indexes is saved in the background each time a segment is full, so on startup only the segments written after it are scanned.
+ * The snapshot only holds the writer lock to copy the indexes, the segments are forced and the file is written while the events are appended.
+ * The same way, a {@code sync} only holds it to take the last segment, so the group commit does not stop the writer during the fsync.<br>
+ * In the background, every {@code COMPACTION_SEGMENTS} full segments are compacted in one file named {@code first-last.log}.
+ * The compaction only merges the files, to bound their number: every event is copied as is, none is removed or rewritten.
+ */
+public class EventLogDAO{
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Default maximum size of a segment in bytes.
+	 */
+	public static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	/** Number of full segments compacted together.
+	 */
+	public static final int COMPACTION_SEGMENTS = 16;
+
+	/** Number of events in a page of the page cache.
+	 */
+	public static final int PAGE_SIZE = 256;
+
+	/** Default maximum size of the events kept in the page cache in bytes.
+	 */
+	public static final long DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+
+	private static final String SEGMENT_EXTENSION = ".log";
+	private static final String TEMPORARY_EXTENSION = ".tmp";
+	private static final String SNAPSHOT_NAME = "snapshot";
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final String AUTHORS_NAME = "authors";
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private File directory;
+	private SyncPolicy syncPolicy;
+	private long segmentSize;
+
+	private volatile Segment[] segments;
+	private volatile EventCodec codec;
+	private PageCache cache;
+	private FileChannel authors;
+	private volatile int nextIndex;
+	private int replayedCount;
+	private boolean dirty;
+	private ScheduledExecutorService syncer;
+	private ExecutorService compactor;
+	private ReentrantLock lock;
+	private ReentrantLock snapshotLock;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code EventLogDAO} class.
+	 * @param directoryName - Name of the log directory. This directory will store all the segments of the log.
+	 * @param syncPolicy - When the appended events are forced on the disk.
+	 * @param syncInterval - Interval between two group commits in milliseconds, only used by {@code SyncPolicy.GROUP}.
+	 * @param segmentSize - Maximum size of a segment in bytes.
+	 */
+	public EventLogDAO(String directoryName, SyncPolicy syncPolicy, long syncInterval, long segmentSize) {
+		this.directory = new File(directoryName);
+		this.syncPolicy = syncPolicy;
+		this.segmentSize = segmentSize;
+		this.segments = new Segment[0];
+		this.codec = new EventCodec();
+		this.cache = new PageCache(DEFAULT_CACHE_SIZE);
+		this.lock = new ReentrantLock();
+		this.snapshotLock = new ReentrantLock();
+		this.compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "eve-log-compaction");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		if(syncPolicy == SyncPolicy.GROUP) {
+			syncer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "eve-log-sync");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			syncer.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					sync();
+				}
+			}, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the log directory.
+	 * @return Log directory.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/** Get the sync policy.
+	 * @return Sync policy.
+	 */
+	public SyncPolicy getSyncPolicy() {
+		return syncPolicy;
+	}
+
+	/** Get the index of the next appended event, which is also the number of events in the log.
+	 * @return Next index.
+	 */
+	public int getNextIndex() {
+		return nextIndex;
+	}
+
+	/** Get the number of events scanned by the last {@code open} because they were not covered by the snapshot.
+	 * @return Number of replayed events.
+	 */
+	public int getReplayedCount() {
+		return replayedCount;
+	}
+
+	/** Set the maximum size of the events kept in the page cache.
+	 * @param cacheSize - Maximum size in bytes, {@code 0} to decode each read from the segments.
+	 */
+	public void setCacheSize(long cacheSize) {
+		cache.setMaxBytes(cacheSize);
+	}
+
+	/** Get the number of pages read from the page cache.
+	 * @return Number of cache hits.
+	 */
+	public long getCacheHits() {
+		return cache.getHits();
+	}
+
+	/** Get the number of pages decoded from the segments because they were not in the page cache.
+	 * @return Number of cache misses.
+	 */
+	public long getCacheMisses() {
+		return cache.getMisses();
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Map the segments, restore their sparse index from the snapshot and open the log for appending.<br>
+	 * Only the records written after the snapshot are scanned. A torn record at the end of the last segment is overwritten by the next append.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void open() throws IOException {
+		snapshotLock.lock();	//Always taken before the writer lock
+		lock.lock();
+		try {
+			if(!directory.exists())
+				directory.mkdirs();
+			readAuthors();
+
+			Map<String, int[][]> snapshot = readSnapshot();
+			List<Segment> opened = new ArrayList<Segment>();
+			File[] files = getSegmentFiles();
+			int index = 0;
+			replayedCount = 0;
+			for(int i=0;i<files.length;i++) {
+				int baseIndex = getBaseIndex(files[i]);
+				if(baseIndex < index && i != files.length-1) {
+					files[i].delete();	//Segment already copied in a compacted one
+					continue;
+				}
+				if(baseIndex != index)
+					throw new IOException("Corrupted segment before " + files[i].getName());
+
+				Segment segment = new Segment(files[i], index, i == files.length-1 ? Math.max(segmentSize, files[i].length()) : files[i].length());
+				int[][] saved = snapshot.get(files[i].getName());
+				if(saved != null)
+					segment.restore(saved[0][0], saved[0][1], saved[1]);
+				replayedCount += segment.recover();
+				index += segment.getCount();
+				opened.add(segment);
+			}
+			for(File file:directory.listFiles())
+				if(file.getName().endsWith(TEMPORARY_EXTENSION))
+					file.delete();
+
+			if(opened.isEmpty())
+				opened.add(new Segment(getSegmentFile(0), 0, segmentSize));
+			segments = opened.toArray(new Segment[0]);
+			nextIndex = index;
+		} finally {
+			lock.unlock();
+			snapshotLock.unlock();
+		}
+	}
+
+	/** Append an event at the end of the log.
+	 * @param event - Event to append. Its index must be the next index of the log.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void append(Event event) throws IOException {
+		lock.lock();
+		try {
+			write(event);
+			if(syncPolicy == SyncPolicy.EVENT)
+				sync();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Append a batch of events at the end of the log.<br>
+	 * With {@code SyncPolicy.EVENT}, the log is forced on the disk once for the whole batch.
+	 * @param events - Events to append, in index order. The index of the first one must be the next index of the log.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void append(List<Event> events) throws IOException {
+		lock.lock();
+		try {
+			for(Event event:events)
+				write(event);
+			if(syncPolicy == SyncPolicy.EVENT)
+				sync();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Read a range of events.<br>
+	 * Only the events published before the call are read, this method never waits for new events.
+	 * The full pages of the range are read from the page cache, or decoded whole and cached. The last page, still being written, is never cached.
+	 * @param fromIndex - Index of the first event to read.
+	 * @param maxCount - Maximum number of events to read.
+	 * @return Events in index order, an empty list if there is no event from {@code fromIndex}.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public List<Event> read(int fromIndex, int maxCount) throws IOException {
+		int lastIndex = nextIndex;
+		int toIndex = (int) Math.min((long) fromIndex + maxCount, lastIndex);
+		if(fromIndex < 0 || fromIndex >= toIndex)
+			return new ArrayList<Event>();
+		if(!cache.isEnabled())
+			return decode(fromIndex, toIndex);
+
+		List<Event> events = new ArrayList<Event>(toIndex - fromIndex);
+		while(fromIndex < toIndex) {
+			int page = fromIndex / PAGE_SIZE;
+			int pageIndex = page * PAGE_SIZE;
+			if((long) pageIndex + PAGE_SIZE > lastIndex) {
+				events.addAll(decode(fromIndex, toIndex));
+				break;
+			}
+			List<Event> cached = cache.get(page);
+			if(cached == null) {
+				cached = decode(pageIndex, pageIndex + PAGE_SIZE);
+				cache.put(page, cached);
+			}
+			int end = Math.min(toIndex, pageIndex + PAGE_SIZE);
+			events.addAll(cached.subList(fromIndex - pageIndex, end - pageIndex));
+			fromIndex = end;
+		}
+		return events;
+	}
+
+	/** Force the appended events on the disk.<br>
+	 * The writer lock is only held while the last segment is taken, the events can be appended while it is forced.
+	 */
+	public void sync() {
+		snapshotLock.lock();
+		try {
+			Segment tail;
+			lock.lock();
+			try {
+				if(!dirty || segments.length == 0)
+					return;
+				tail = segments[segments.length-1];
+				dirty = false;	//The events appended from now on are forced by the next sync
+			} finally {
+				lock.unlock();
+			}
+			forceAuthors();
+			tail.force();
+		} finally {
+			snapshotLock.unlock();
+		}
+	}
+
+	/** Force the appended events on the disk and save a snapshot of the sparse indexes.<br>
+	 * The next {@code open} only scans the records written after this snapshot.
+	 * The writer lock is only held while the indexes are copied, the events can be appended while the segments are forced and the snapshot is written.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void snapshot() throws IOException {
+		snapshotLock.lock();
+		try {
+			Segment[] current;
+			int[][] headers;
+			int[][] offsets;
+			lock.lock();
+			try {
+				current = segments;
+				headers = new int[current.length][];
+				offsets = new int[current.length][];
+				for(int i=0;i<current.length;i++) {
+					headers[i] = new int[] {current[i].getCount(), current[i].getSize()};
+					offsets[i] = current[i].getOffsets();
+				}
+			} finally {
+				lock.unlock();
+			}
+			forceAuthors();
+			for(Segment segment:current)
+				segment.force();
+
+			File temporary = new File(directory, SNAPSHOT_NAME + TEMPORARY_EXTENSION);
+			FileOutputStream file = new FileOutputStream(temporary);
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file));
+			try {
+				output.writeInt(SNAPSHOT_VERSION);
+				output.writeInt(current.length);
+				for(int i=0;i<current.length;i++) {
+					output.writeUTF(current[i].getFile().getName());
+					output.writeInt(headers[i][0]);
+					output.writeInt(headers[i][1]);
+					output.writeInt(offsets[i].length);
+					for(int offset:offsets[i])
+						output.writeInt(offset);
+				}
+				output.flush();
+				file.getFD().sync();
+			} finally {
+				output.close();
+			}
+			Files.move(temporary.toPath(), new File(directory, SNAPSHOT_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			snapshotLock.unlock();
+		}
+	}
+
+	/** Wait for the running compaction, save a snapshot and close the log.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void close() throws IOException {
+		if(syncer != null)
+			syncer.shutdown();
+		compactor.shutdown();
+		try {
+			compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);	//A compaction swaps its segments under the writer lock
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		snapshotLock.lock();
+		lock.lock();
+		try {
+			if(segments.length != 0)
+				snapshot();
+			for(Segment segment:segments)
+				segment.close();
+			segments = new Segment[0];
+			cache.clear();
+			if(authors != null)
+				authors.close();
+		} finally {
+			lock.unlock();
+			snapshotLock.unlock();
+		}
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void write(Event event) throws IOException {
+		if(event.getIndex() != nextIndex)
+			throw new IOException("Event " + event.getIndex() + " appended at index " + nextIndex);
+
+		byte[] record = encode(event);
+		Segment segment = segments[segments.length-1];
+		boolean full = !segment.append(record);
+		if(full) {
+			segment = new Segment(getSegmentFile(nextIndex), nextIndex, Math.max(segmentSize, record.length));
+			segment.append(record);
+			Segment[] extended = Arrays.copyOf(segments, segments.length+1);
+			extended[segments.length] = segment;
+			segments = extended;
+		}
+		dirty = true;
+		nextIndex++;
+
+		if(full) {
+			compactor.execute(new Runnable() {	//The appends go on while the previous segment is forced
+				public void run() {
+					try {
+						snapshot();
+						compact();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			});
+		}
+	}
+
+	private File[] getSegmentFiles() {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith(SEGMENT_EXTENSION);
+			}
+		});
+		if(files == null)
+			return new File[0];
+		Arrays.sort(files);
+		return files;
+	}
+
+	private File getSegmentFile(int baseIndex) {
+		return new File(directory, String.format("%020d", baseIndex) + SEGMENT_EXTENSION);
+	}
+
+	private File getSegmentFile(int baseIndex, int lastIndex) {
+		return new File(directory, String.format("%020d-%020d", baseIndex, lastIndex) + SEGMENT_EXTENSION);
+	}
+
+	private int getBaseIndex(File file) throws IOException {
+		try {
+			return Integer.parseInt(file.getName().substring(0, 20));
+		} catch (NumberFormatException | IndexOutOfBoundsException e) {
+			throw new IOException("Invalid segment name " + file.getName());
+		}
+	}
+
+	private boolean isCompacted(Segment segment) {
+		return segment.getFile().getName().indexOf('-') != -1;
+	}
+
+	private Map<String, int[][]> readSnapshot() {
+		Map<String, int[][]> snapshot = new HashMap<String, int[][]>();
+		File file = new File(directory, SNAPSHOT_NAME);
+		if(!file.exists())
+			return snapshot;
+		try {
+			DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if(input.readInt() != SNAPSHOT_VERSION)
+					return snapshot;
+				int length = input.readInt();
+				for(int i=0;i<length;i++) {
+					String name = input.readUTF();
+					int[] header = new int[] {input.readInt(), input.readInt()};
+					int[] offsets = new int[input.readInt()];
+					for(int j=0;j<offsets.length;j++)
+						offsets[j] = input.readInt();
+					snapshot.put(name, new int[][] {header, offsets});
+				}
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			snapshot.clear();	//Unreadable snapshot, all the segments are scanned
+		}
+		return snapshot;
+	}
+
+	private void compact() throws IOException {
+		Segment[] current = segments;
+		int first = 0, count = 0;
+		long capacity = 0;
+		for(int i=0;i<current.length-1 && count < COMPACTION_SEGMENTS;i++) {
+			if(isCompacted(current[i]) || capacity + current[i].getSize() > Integer.MAX_VALUE) {
+				count = 0;
+				capacity = 0;
+				continue;
+			}
+			if(count == 0)
+				first = i;
+			count++;
+			capacity += current[i].getSize();
+		}
+		if(count < COMPACTION_SEGMENTS)
+			return;
+
+		Segment[] run = Arrays.copyOfRange(current, first, first + COMPACTION_SEGMENTS);
+		int baseIndex = run[0].getBaseIndex();
+		int lastIndex = run[run.length-1].getBaseIndex() + run[run.length-1].getCount() - 1;
+		File file = getSegmentFile(baseIndex, lastIndex);
+		File temporary = new File(directory, file.getName() + TEMPORARY_EXTENSION);
+		Segment merged = new Segment(temporary, baseIndex, capacity);
+		for(Segment segment:run)
+			segment.copyTo(merged);
+		merged.close();
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+		Segment compacted = new Segment(file, baseIndex, file.length());
+		compacted.restore(merged.getCount(), merged.getSize(), merged.getOffsets());
+		lock.lock();
+		try {
+			if(segments.length == 0)
+				return;
+			Segment[] replaced = new Segment[segments.length - run.length + 1];
+			System.arraycopy(segments, 0, replaced, 0, first);
+			replaced[first] = compacted;
+			System.arraycopy(segments, first + run.length, replaced, first + 1, segments.length - first - run.length);
+			segments = replaced;
+		} finally {
+			lock.unlock();
+		}
+		snapshot();	//Saved before the merged files are deleted
+		for(Segment segment:run) {
+			segment.close();
+			segment.getFile().delete();
+		}
+	}
+
+	private List<Event> decode(int fromIndex, int toIndex) throws IOException {
+		List<byte[]> bodies = new ArrayList<byte[]>(toIndex - fromIndex);
+		Segment[] snapshot = segments;
+		for(int i=findSegment(snapshot, fromIndex);fromIndex < toIndex;i++) {
+			int end = i == snapshot.length-1 ? toIndex : Math.min(toIndex, snapshot[i+1].getBaseIndex());
+			snapshot[i].read(fromIndex, end, bodies);
+			fromIndex = end;
+		}
+
+		List<Event> events = new ArrayList<Event>(bodies.size());
+		for(byte[] body:bodies)
+			events.add(decode(body));
+		return events;
+	}
+
+	private int findSegment(Segment[] snapshot, int index) {
+		int low = 0, high = snapshot.length-1;
+		while(low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if(snapshot[middle].getBaseIndex() <= index)
+				low = middle;
+			else
+				high = middle-1;
+		}
+		return low;
+	}
+
+	/*********************/
+	/** IMPORT & EXPORT **/
+	/*********************/
+
+	private byte[] encode(Event event) throws IOException {
+		if(codec.getAuthorId(event.getAuthor()) == -1 && codec.getAuthorCount() < codec.getMaxAuthors())
+			writeAuthor(event.getAuthor());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream body = new DataOutputStream(bytes);
+		codec.encode(event, null, body);
+		body.close();
+		byte[] data = bytes.toByteArray();
+
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		ByteBuffer record = ByteBuffer.allocate(Segment.HEADER_SIZE + data.length);
+		record.putInt(data.length);
+		record.putInt((int) crc.getValue());
+		record.put(data);
+		return record.array();
+	}
+
+	private Event decode(byte[] body) throws IOException {
+		return codec.decode(null, new DataInputStream(new ByteArrayInputStream(body)));
+	}
+
+	private void readAuthors() throws IOException {
+		File file = new File(directory, AUTHORS_NAME);
+		long length = 0;
+		List<String> names = new ArrayList<String>();
+		if(file.exists()) {
+			byte[] dictionary = Files.readAllBytes(file.toPath());
+			DataInputStream input = new DataInputStream(new ByteArrayInputStream(dictionary));
+			try {
+				while(true) {
+					names.add(input.readUTF());
+					length = dictionary.length - input.available();
+				}
+			} catch (EOFException e) {
+				//End of the dictionary, a torn entry is cut below
+			}
+		}
+		codec = new EventCodec(Math.max(EventCodec.DEFAULT_MAX_AUTHORS, names.size()));	//A dictionary saved before the bound is kept whole, its ids are in the records
+		for(String name:names)
+			codec.addAuthor(name);
+		authors = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		authors.truncate(length);
+		authors.position(length);
+	}
+
+	private void writeAuthor(String author) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeUTF(author);
+		output.close();
+		ByteBuffer entry = ByteBuffer.wrap(bytes.toByteArray());
+		while(entry.hasRemaining())
+			authors.write(entry);
+		codec.addAuthor(author);
+	}
+
+	private void forceAuthors() {
+		try {
+			if(authors != null && authors.isOpen())
+				authors.force(false);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
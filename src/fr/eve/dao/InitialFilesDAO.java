@@ -0,0 +1,102 @@
+package fr.eve.dao;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import fr.eve.server.InitialFile;
+
+/** The {@code InitialFilesDAO} class is used to manage serialization and deserialization of a {@code Map<String, InitialFile>} object.<br><br>
+ * The client uses it to cache the hash of the initial files already downloaded.
+ */
+public class InitialFilesDAO{
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+	
+	private File manifestFile;
+	
+	/*************/
+	/** BUILDER **/
+	/*************/
+	
+	/** Builder of the {@code InitialFilesDAO} class.
+	 * @param manifestFileName - Name of the manifest file. This file will store the hash of the downloaded initial files.
+	 */
+	public InitialFilesDAO(String manifestFileName) {
+		manifestFile = new File(manifestFileName);
+	}
+	
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Get the class instance.
+	 * @return Class instance.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws ClassNotFoundException if class of a serialized object cannot be found.
+	 */
+	public Map<String, InitialFile> find() throws IOException, ClassNotFoundException {
+		if(manifestFile.exists())
+			return deserialize(manifestFile);
+		else
+			return create();
+	}
+
+	/** Create a new class instance.
+	 * @return Class instance.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	protected Map<String, InitialFile> create() throws IOException {
+		Map<String, InitialFile> manifest = new HashMap<String, InitialFile>();
+		serialize(manifest, manifestFile);
+		return manifest;
+	}
+
+	/** Update the class instance.
+	 * @param manifest - New instance.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void update(Map<String, InitialFile> manifest) throws IOException {
+		serialize(manifest, manifestFile);
+	}
+
+	/*********************/
+	/** IMPORT & EXPORT **/
+	/*********************/
+
+	/** Serialize the class instance in a file.
+	 * @param manifest - Class instance to serialize.
+	 * @param file - File in which serialize the class instance.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void serialize(Map<String, InitialFile> manifest, File file) throws IOException {		  
+		FileOutputStream fileOut = new FileOutputStream(file.getAbsolutePath());
+		ObjectOutputStream out = new ObjectOutputStream(fileOut);
+		out.writeObject(manifest);
+		out.close();
+		fileOut.close();
+	}
+
+	/** Deserialize the class instance from a file.
+	 * @param file - File from which deserialize the class instance.
+	 * @return Deserialized class instance.
+	 * @throws ClassNotFoundException if class of a serialized object cannot be found.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public Map<String, InitialFile> deserialize(File file) throws IOException, ClassNotFoundException {
+		FileInputStream fileIn = new FileInputStream(file.getAbsolutePath());
+		ObjectInputStream in = new ObjectInputStream(fileIn);
+		@SuppressWarnings("unchecked")
+		Map<String, InitialFile> manifest = (Map<String, InitialFile>) in.readObject();
+		in.close();
+		fileIn.close();
+		return manifest;
+	}	
+}
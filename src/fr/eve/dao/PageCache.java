@@ -0,0 +1,140 @@
+package fr.eve.dao;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import fr.eve.server.Event;
+
+/** The {@code PageCache} class is used to keep the last read pages of an {@code EventLogDAO} in memory.<br><br>
+ * A page holds {@code EventLogDAO.PAGE_SIZE} decoded events and is only cached once it is full, so a cached page never changes.
+ * The cache is bounded by the size of its events: the least recently used pages are released first.
+ * A reader catching up on the history reads the pages in sequence, the readers following it at the same place find them decoded.
+ */
+class PageCache {
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private LinkedHashMap<Integer, Page> pages;
+	private long maxBytes;
+	private long bytes;
+	private long hits;
+	private long misses;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code PageCache} class.
+	 * @param maxBytes - Maximum size of the cached events in bytes, {@code 0} to disable the cache.
+	 */
+	PageCache(long maxBytes) {
+		this.pages = new LinkedHashMap<Integer, Page>(16, 0.75f, true);
+		this.maxBytes = maxBytes;
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Check if the pages are cached.
+	 * @return {@code true} if the maximum size is not {@code 0}, {@code false} otherwise.
+	 */
+	synchronized boolean isEnabled() {
+		return maxBytes > 0;
+	}
+
+	/** Set the maximum size of the cached events, the pages in excess are released.
+	 * @param maxBytes - Maximum size of the cached events in bytes, {@code 0} to disable the cache.
+	 */
+	synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	/** Get the size of the cached events.
+	 * @return Size of the events once encoded in UTF-8, in bytes.
+	 */
+	synchronized long getBytes() {
+		return bytes;
+	}
+
+	/** Get the number of pages found in the cache.
+	 * @return Number of hits.
+	 */
+	synchronized long getHits() {
+		return hits;
+	}
+
+	/** Get the number of pages read from the log because they were not in the cache.
+	 * @return Number of misses.
+	 */
+	synchronized long getMisses() {
+		return misses;
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Get a cached page.
+	 * @param page - Number of the page, the index of its first event divided by {@code EventLogDAO.PAGE_SIZE}.
+	 * @return Events of the page, {@code null} if the page is not cached.
+	 */
+	synchronized List<Event> get(int page) {
+		Page cached = pages.get(page);
+		if(cached == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return cached.events;
+	}
+
+	/** Cache a full page, releasing the least recently used pages if needed.
+	 * @param page - Number of the page.
+	 * @param events - Events of the page, which must not be modified afterwards.
+	 */
+	synchronized void put(int page, List<Event> events) {
+		if(maxBytes <= 0 || pages.containsKey(page))
+			return;
+		long size = 0;
+		for(Event event:events)
+			size += event.getSize();
+		pages.put(page, new Page(events, size));
+		bytes += size;
+		evict();
+	}
+
+	/** Release all the pages.
+	 */
+	synchronized void clear() {
+		pages.clear();
+		bytes = 0;
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void evict() {
+		Iterator<Page> iterator = pages.values().iterator();
+		while(bytes > maxBytes && iterator.hasNext()) {
+			bytes -= iterator.next().bytes;
+			iterator.remove();
+		}
+	}
+
+	private static class Page {
+
+		private List<Event> events;
+		private long bytes;
+
+		private Page(List<Event> events, long bytes) {
+			this.events = events;
+			this.bytes = bytes;
+		}
+	}
+}
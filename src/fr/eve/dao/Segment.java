@@ -0,0 +1,229 @@
+package fr.eve.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import fr.eve.server.EventCodec;
+
+/** The {@code Segment} class is used to manage one memory-mapped segment file of an {@code EventLogDAO}.<br><br>
+ * The file is mapped once with its whole capacity: records are written and read directly in the mapped pages.
+ * A sparse index keeps the offset of one record every {@code INDEX_INTERVAL} records, so a read from any index scans at most {@code INDEX_INTERVAL} headers.
+ */
+class Segment {
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	static final int HEADER_SIZE = 8;
+	static final int INDEX_INTERVAL = 32;
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private File file;
+	private int baseIndex;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+
+	private int[] offsets;
+	private int count;
+	private int size;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code Segment} class.
+	 * @param file - Segment file, created if it does not exist.
+	 * @param baseIndex - Index of the first event of the segment.
+	 * @param capacity - Minimum size of the mapping in bytes.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	Segment(File file, int baseIndex, long capacity) throws IOException {
+		this.file = file;
+		this.baseIndex = baseIndex;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, channel.size()));
+		this.offsets = new int[16];
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the segment file.
+	 * @return Segment file.
+	 */
+	File getFile() {
+		return file;
+	}
+
+	/** Get the index of the first event of the segment.
+	 * @return Base index.
+	 */
+	int getBaseIndex() {
+		return baseIndex;
+	}
+
+	/** Get the number of events in the segment.
+	 * @return Number of events.
+	 */
+	int getCount() {
+		return count;
+	}
+
+	/** Get the number of bytes used by the records.
+	 * @return Used size.
+	 */
+	int getSize() {
+		return size;
+	}
+
+	/** Get the sparse index.
+	 * @return Offset of one record every {@code INDEX_INTERVAL} records.
+	 */
+	int[] getOffsets() {
+		return Arrays.copyOf(offsets, (count + INDEX_INTERVAL - 1) / INDEX_INTERVAL);
+	}
+
+	/** Get the capacity of the mapping.
+	 * @return Capacity in bytes.
+	 */
+	int getCapacity() {
+		return buffer.capacity();
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Restore the sparse index saved by a snapshot, so the records it covers are not scanned again.
+	 * @param count - Number of events covered by the snapshot.
+	 * @param size - Number of bytes covered by the snapshot.
+	 * @param offsets - Sparse index saved by the snapshot.
+	 */
+	void restore(int count, int size, int[] offsets) {
+		this.count = count;
+		this.size = size;
+		this.offsets = Arrays.copyOf(offsets, Math.max(offsets.length, 16));
+	}
+
+	/** Scan the records following the restored ones and complete the sparse index.<br>
+	 * The scan stops at the first empty, torn or corrupted record, the next append overwrites it.
+	 * @return Number of scanned events.
+	 */
+	int recover() {
+		int restored = count;
+		CRC32 crc = new CRC32();
+		while(size + HEADER_SIZE <= buffer.capacity()) {
+			int length = buffer.getInt(size);
+			int checksum = buffer.getInt(size + 4);
+			if(length <= 0 || (long) size + HEADER_SIZE + length > buffer.capacity())
+				break;
+			ByteBuffer body = buffer.duplicate();
+			body.position(size + HEADER_SIZE);
+			body.limit(size + HEADER_SIZE + length);
+			crc.reset();
+			crc.update(body);
+			if((int) crc.getValue() != checksum || EventCodec.readIndex(buffer, size + HEADER_SIZE) != baseIndex + count)
+				break;
+			index(size);
+			size += HEADER_SIZE + length;
+		}
+		return count - restored;
+	}
+
+	/** Write a record at the end of the segment.
+	 * @param record - Record to write, header included.
+	 * @return {@code true} if the record has been written, {@code false} if the segment is full.
+	 */
+	boolean append(byte[] record) {
+		if(size + record.length > buffer.capacity())
+			return false;
+		ByteBuffer view = buffer.duplicate();
+		view.position(size);
+		view.put(record);
+		index(size);
+		size += record.length;
+		return true;
+	}
+
+	/** Get the bodies of a range of records.<br>
+	 * The record of {@code fromIndex} is located with the sparse index, the following ones are read in sequence.
+	 * The caller must only ask for indexes already published by the {@code EventLogDAO}.
+	 * @param fromIndex - Index of the first event, inclusive.
+	 * @param toIndex - Index of the last event, exclusive.
+	 * @param bodies - List in which add the record bodies.
+	 */
+	void read(int fromIndex, int toIndex, List<byte[]> bodies) {
+		int slot = (fromIndex - baseIndex) / INDEX_INTERVAL;
+		int offset = offsets[slot];
+		for(int i=baseIndex + slot * INDEX_INTERVAL;i<fromIndex;i++)
+			offset += HEADER_SIZE + buffer.getInt(offset);
+
+		ByteBuffer view = buffer.duplicate();
+		for(int i=fromIndex;i<toIndex;i++) {
+			byte[] body = new byte[buffer.getInt(offset)];
+			view.position(offset + HEADER_SIZE);
+			view.get(body);
+			bodies.add(body);
+			offset += HEADER_SIZE + body.length;
+		}
+	}
+
+	/** Copy all the records of the segment at the end of another one.
+	 * @param target - Segment in which copy the records.
+	 * @return {@code true} if the records have been copied, {@code false} if the target segment is full.
+	 */
+	boolean copyTo(Segment target) {
+		if(target.size + size > target.buffer.capacity())
+			return false;
+		ByteBuffer view = buffer.duplicate();
+		int offset = 0;
+		for(int i=0;i<count;i++) {
+			byte[] record = new byte[HEADER_SIZE + buffer.getInt(offset)];
+			view.position(offset);
+			view.get(record);
+			target.append(record);
+			offset += record.length;
+		}
+		return true;
+	}
+
+	/** Force the mapped pages on the disk.
+	 */
+	void force() {
+		buffer.force();
+	}
+
+	/** Force the mapped pages on the disk and close the file.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	void close() throws IOException {
+		buffer.force();
+		channel.close();
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void index(int offset) {
+		if(count % INDEX_INTERVAL == 0) {
+			int slot = count / INDEX_INTERVAL;
+			if(slot == offsets.length)
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			offsets[slot] = offset;
+		}
+		count++;
+	}
+}
@@ -0,0 +1,107 @@
+package fr.eve.dao;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+import fr.eve.server.StateSnapshot;
+
+/** The {@code StateDAO} class is used to save the materialized state of a channel with the index of the events it covers.<br><br>
+ * The file holds a version, the index, the length and the CRC32 of the encoded state, then the state.
+ * A new state is written in a temporary file then moved in place, so a crash leaves either the previous state or the new one.
+ */
+public class StateDAO {
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	private static final int VERSION = 1;
+	private static final String TEMPORARY_EXTENSION = ".tmp";
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private File stateFile;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code StateDAO} class.
+	 * @param stateFileName - Name of the state file.
+	 */
+	public StateDAO(String stateFileName) {
+		this.stateFile = new File(stateFileName);
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Get the saved state.
+	 * @return Saved state, {@code null} if no valid state was saved.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public StateSnapshot find() throws IOException {
+		if(!stateFile.isFile())
+			return null;
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(stateFile.toPath())));
+		try {
+			if(input.available() < 16 || input.readInt() != VERSION)
+				return null;
+			int index = input.readInt();
+			int length = input.readInt();
+			int checksum = input.readInt();
+			if(length < 0 || length != input.available())
+				return null;
+			byte[] data = new byte[length];
+			input.readFully(data);
+			if(checksum(data) != checksum)
+				return null;
+			return new StateSnapshot(index, data);
+		} finally {
+			input.close();
+		}
+	}
+
+	/** Save a state and force it on the disk.
+	 * @param state - State to save.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void update(StateSnapshot state) throws IOException {
+		File temporary = new File(stateFile.getPath() + TEMPORARY_EXTENSION);
+		FileOutputStream file = new FileOutputStream(temporary);
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file));
+		try {
+			output.writeInt(VERSION);
+			output.writeInt(state.getIndex());
+			output.writeInt(state.getData().length);
+			output.writeInt(checksum(state.getData()));
+			output.write(state.getData());
+			output.flush();
+			file.getFD().sync();
+		} finally {
+			output.close();
+		}
+		Files.move(temporary.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private static int checksum(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		return (int) crc.getValue();
+	}
+}
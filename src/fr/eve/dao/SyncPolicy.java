@@ -0,0 +1,18 @@
+package fr.eve.dao;
+
+/** The {@code SyncPolicy} enum declare when the appended events are forced on the disk.
+ */
+public enum SyncPolicy {
+
+	/** Force the log on the disk after each append. Nothing is lost on a crash but each event costs a disk flush.
+	 */
+	EVENT,
+
+	/** Force the log on the disk every {@code syncInterval} milliseconds (group commit). A crash loses at most one interval.
+	 */
+	GROUP,
+
+	/** Never force the log, the operating system writes the pages back when it wants.
+	 */
+	OS;
+}
@@ -5,12 +5,19 @@ import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-/** The {@code RMIClient} class is used to access RMI server interface.
+import fr.eve.utils.Service;
+
+/** The {@code RMIClient} class is used to access RMI server interface.<br><br>
+ * The server interfaces are cached by url: the clients of a JVM share the stub of a server, and so its connections, instead of looking it up each time.
  */
 public abstract class RMIClient {
 
-	/** Get the server interface.
+	private static final Map<String, Remote> INTERFACES = new ConcurrentHashMap<String, Remote>();
+
+	/** Get the server interface, it is looked up in the registry the first time.
 	 * @param ip - Server ip.
 	 * @param port - Server port.
 	 * @param name - Server name.
@@ -19,8 +26,23 @@ public abstract class RMIClient {
 	 * @throws NotBoundException if the server name does not exist
 	 */
 	public static Remote getInterface(String ip, int port, String name) throws RemoteException, NotBoundException {
+		String url = Service.getUrl(name, ip, port);
+		Remote server = INTERFACES.get(url);
+		if(server != null)
+			return server;
 		System.setProperty("java.security.policy", "java.security.AllPermission");		
 		Registry registry = LocateRegistry.getRegistry(ip, port);
-		return registry.lookup(name);
+		server = registry.lookup(name);
+		INTERFACES.put(url, server);
+		return server;
+	}
+
+	/** Forget a cached server interface, for example once the server was closed. The next call to {@code getInterface} looks it up again.
+	 * @param ip - Server ip.
+	 * @param port - Server port.
+	 * @param name - Server name.
+	 */
+	public static void removeInterface(String ip, int port, String name) {
+		INTERFACES.remove(Service.getUrl(name, ip, port));
 	}
 }
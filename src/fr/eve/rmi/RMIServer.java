@@ -1,5 +1,6 @@
 package fr.eve.rmi;
 
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.UnknownHostException;
@@ -9,19 +10,32 @@ import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.rmi.server.RemoteServer;
+import java.rmi.server.ServerNotActiveException;
 import java.rmi.server.UnicastRemoteObject;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import fr.eve.utils.LogLevel;
 import fr.eve.utils.Logger;
 import fr.eve.utils.Service;
 
 
 /** The {@code RMIServer} class is used to manage RMI servers.<br><br>
  * This class extends {@code UnicastRemoteObject} class.
+ * The bean given by {@code getMBean} is registered in the platform MBean server as {@code fr.eve:type=Server,name=<name>,port=<port>} while the server is opened.
  */
 public abstract class RMIServer extends UnicastRemoteObject{
 	
 	private static final long serialVersionUID = 6863636390287094989L;
 
+	/** Maximum time the server waits for its last log messages to be written when it is closed, in milliseconds.
+	 */
+	public static final long LOG_FLUSH_TIMEOUT = 1000;
+
+	private static final ThreadLocal<String> CLIENT_HOST = new ThreadLocal<String>();
+
 	/**************/
 	/** ATRIBUTS **/
 	/**************/
@@ -31,6 +45,7 @@ public abstract class RMIServer extends UnicastRemoteObject{
 	private Logger logger;
 	
 	private Registry registry;
+	private ObjectName objectName;
 	
 	/*************/
 	/** BUILDER **/
@@ -80,6 +95,32 @@ public abstract class RMIServer extends UnicastRemoteObject{
 	 * @return Server logger.
 	 */
 	public Logger getLogger() {return logger;}
+
+	/** Get the management bean registered when the server is opened.
+	 * @return MBean or MXBean of the server, {@code null} to register nothing.
+	 */
+	protected Object getMBean() {return null;}
+	
+	/** Get the host of the client whose call is processed by the current thread.<br>
+	 * The host given by {@code setClientHost} is returned first, so the calls received by another transport than RMI are identified the same way.
+	 * @return Client host.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public static String getClientHost() throws ServerNotActiveException {
+		String host = CLIENT_HOST.get();
+		return host != null ? host : RemoteServer.getClientHost();
+	}
+
+	/** Set the host of the client whose call is processed by the current thread.<br>
+	 * Only the servers set it, for the calls of their other transports and sessions, so no other code can take the identity of a client.
+	 * @param host - Client host, {@code null} once the call is processed.
+	 */
+	protected static void setClientHost(String host) {
+		if(host == null)
+			CLIENT_HOST.remove();
+		else
+			CLIENT_HOST.set(host);
+	}
 	
 	/*************/
 	/** METHODS **/
@@ -90,19 +131,44 @@ public abstract class RMIServer extends UnicastRemoteObject{
 	 * @throws MalformedURLException if the name is not an appropriately formatted URL
 	 */
 	public void open() throws RemoteException, MalformedURLException {
+		long start = System.currentTimeMillis();
 		registry = LocateRegistry.createRegistry(this.port);
 		Naming.rebind(Service.getUrl(name, ip, port), this);
-		logger.log("Server opened (Name : " + this.name + ", Ip : " + this.ip + ", Port : " +  this.port + ")");
+		Object mbean = getMBean();
+		if(mbean != null) {
+			try {
+				ObjectName objectName = new ObjectName("fr.eve:type=Server,name=" + ObjectName.quote(name) + ",port=" + port);
+				ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, objectName);
+				this.objectName = objectName;
+			} catch (JMException e) {
+				logger.log(LogLevel.WARN, "Metrics could not be registered : " + e.getMessage());
+			}
+		}
+		logger.log("Server opened in " + (System.currentTimeMillis() - start) + " ms (Name : " + this.name + ", Ip : " + this.ip + ", Port : " +  this.port + ")");
 	}
 
-	/**
+	/** Close the server. A server which was never opened is only unexported.
 	 * @throws RemoteException if the registry could not be exported or contacted.
 	 * @throws NotBoundException if name is not currently bound.
 	 * @throws AccessException if this registry is local and it denies the caller access to perform this operation.
 	 */
 	public void close() throws AccessException, RemoteException, NotBoundException {
-		registry.unbind(this.name);
+		if(registry != null)
+			registry.unbind(this.name);
+		if(objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				//Already unregistered
+			}
+			objectName = null;
+		}
         UnicastRemoteObject.unexportObject(this, true);
         logger.log("Server closed");
+		try {
+			logger.flush(LOG_FLUSH_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 }
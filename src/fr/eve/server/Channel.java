@@ -0,0 +1,717 @@
+package fr.eve.server;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+import fr.eve.dao.EventLogDAO;
+import fr.eve.dao.StateDAO;
+import fr.eve.utils.Logger;
+
+/** The {@code Channel} class represent a named stream of events.<br><br>
+ * Each channel has its own log, its own buffer of recent events, its own lock and its own notifier, so the channels do not contend with each other.
+ * The buffer is the hot window of the channel, bounded in events and in bytes. The older events are read from the log through its page cache,
+ * so the heap used by a channel does not grow with its history.<br>
+ * A channel given a {@code Reducer} folds its events into a state, checkpointed with the index it covers, so the new clients do not replay the whole history.
+ * The events of a channel are indexed from {@code 0} in the order they were published on this channel.<br>
+ * The subscribers are indexed by their filter, so a publish only offers its events to the subscribers which may accept them:
+ * by author if the filter accepts only some authors, else by prefix if it has one, else by the value of its first field.
+ * The prefixes are looked up for each length subscribed, the fields by reading in each event the values of the field names subscribed.
+ * The other subscribers, and those waiting for a field value which cannot be read alone (a literal holding a space or a delimiter), are offered every event.
+ * The indexes are only changed under their own lock, and an entry is removed with its last subscriber, so they do not grow as the clients come and go.<br>
+ * The channel keeps the cursor of each client reading it, so the {@code ServerMetrics} can tell how far behind each client is.<br>
+ * A numbered batch arrived before the previous batch of its author is kept aside, without holding the calling thread, and published as soon as the gap is filled.
+ */
+class Channel {
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Number of events read from the log at once to fill the buffer.
+	 */
+	static final int PRELOAD_SIZE = 1024;
+
+	/** Maximum number of batches of an author kept while waiting for a previous batch.
+	 */
+	static final int MAX_PENDING_BATCHES = 64;
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private String name;
+	private Logger logger;
+	private ServerMetrics metrics;
+	private EventLogDAO eventLog;
+	private volatile EventBuffer buffer;
+	private SequenceNotifier notifier;
+	private ReentrantLock writeLock;
+	private ScheduledExecutorService timer;
+	private Map<String, Integer> sequences;
+	private Map<String, Map<Integer, Batch>> pending;
+	private Map<String, Subscriber> subscribers;
+	private Set<Subscriber> unindexed;
+	private Map<String, Set<Subscriber>> byAuthor;
+	private Map<String, Set<Subscriber>> byPrefix;
+	private Set<Integer> prefixLengths;
+	private Map<String, Map<String, Set<Subscriber>>> byField;
+	private ReentrantLock indexLock;
+	private Map<String, AtomicInteger> readers;
+	private volatile Materializer<?> materializer;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code Channel} class.<br>
+	 * The last events of the log are loaded in the buffer.
+	 * @param name - Name of the channel.
+	 * @param eventLog - Opened log of the channel.
+	 * @param hotEvents - Number of recent events kept in memory.
+	 * @param hotBytes - Maximum size of the recent events kept in memory, in bytes.
+	 * @param logger - Server logger.
+	 * @param metrics - Server metrics.
+	 * @param executor - Executor running the listeners of the readers waiting for events.
+	 * @param timer - Executor expiring the batches waiting for a previous batch.
+	 * @throws IOException if the log could not be read.
+	 */
+	Channel(String name, EventLogDAO eventLog, int hotEvents, long hotBytes, Logger logger, ServerMetrics metrics, Executor executor, ScheduledExecutorService timer) throws IOException {
+		this.name = name;
+		this.logger = logger;
+		this.metrics = metrics;
+		this.eventLog = eventLog;
+		this.buffer = newBuffer(hotEvents, hotBytes);
+		this.notifier = new SequenceNotifier(buffer.getCursor(), executor);
+		this.writeLock = new ReentrantLock();
+		this.timer = timer;
+		this.sequences = new HashMap<String, Integer>();
+		this.pending = new HashMap<String, Map<Integer, Batch>>();
+		this.subscribers = new ConcurrentHashMap<String, Subscriber>();
+		this.unindexed = ConcurrentHashMap.newKeySet();
+		this.byAuthor = new ConcurrentHashMap<String, Set<Subscriber>>();
+		this.byPrefix = new ConcurrentHashMap<String, Set<Subscriber>>();
+		this.prefixLengths = new ConcurrentSkipListSet<Integer>();
+		this.byField = new ConcurrentHashMap<String, Map<String, Set<Subscriber>>>();
+		this.indexLock = new ReentrantLock();
+		this.readers = new ConcurrentHashMap<String, AtomicInteger>();
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the channel name.
+	 * @return Name of the channel.
+	 */
+	String getName() {
+		return name;
+	}
+
+	/** Get the published sequence.
+	 * @return Number of published events.
+	 */
+	int getSequence() {
+		return notifier.getSequence();
+	}
+
+	/** Get the number of events in the buffer or being published.
+	 * @return Index of the next event.
+	 */
+	int getCursor() {
+		return buffer.getCursor();
+	}
+
+	/** Get the size of the recent events kept in memory.
+	 * @return Size of the events of the buffer, in bytes.
+	 */
+	long getHotBytes() {
+		return buffer.getBytes();
+	}
+
+	/** Change the number and the size of the recent events kept in memory.<br>
+	 * The buffer is replaced by a new one filled from the log, the readers of the previous buffer still get consistent events.
+	 * @param hotEvents - Number of recent events kept in memory.
+	 * @param hotBytes - Maximum size of the recent events kept in memory, in bytes.
+	 * @throws IOException if the log could not be read.
+	 */
+	void setHotWindow(int hotEvents, long hotBytes) throws IOException {
+		writeLock.lock();
+		try {
+			buffer = newBuffer(hotEvents, hotBytes);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/** Get the last checkpoint of the state of the channel.
+	 * @return State snapshot, {@code null} if the channel has no reducer or if its state was not checkpointed yet.
+	 */
+	StateSnapshot getState() {
+		Materializer<?> materializer = this.materializer;
+		return materializer == null ? null : materializer.getSnapshot();
+	}
+
+	/** Fold the events of the channel into a state, in place of the previous reducer.<br>
+	 * The saved state is loaded and the events published after it are folded in the background.
+	 * @param reducer - Reducer of the events.
+	 * @param stateDAO - State file.
+	 * @param checkpointEvents - Number of events folded between two checkpoints.
+	 * @throws IOException if the state file could not be read.
+	 */
+	synchronized <S> void setReducer(Reducer<S> reducer, StateDAO stateDAO, int checkpointEvents) throws IOException {
+		if(materializer != null)
+			materializer.close();	//Saves the state before it is loaded again
+		Materializer<S> materializer = new Materializer<S>(this, reducer, stateDAO, checkpointEvents, logger);
+		materializer.start();
+		this.materializer = materializer;
+	}
+
+	/** Get the log of the channel.
+	 * @return Event log.
+	 */
+	EventLogDAO getEventLog() {
+		return eventLog;
+	}
+
+	/** Get the server metrics.
+	 * @return Metrics of the server owning the channel.
+	 */
+	ServerMetrics getMetrics() {
+		return metrics;
+	}
+
+	/** Get the server logger.
+	 * @return Logger of the server owning the channel.
+	 */
+	Logger getLogger() {
+		return logger;
+	}
+
+	/** Get the number of readers waiting for an event.
+	 * @return Number of waiting readers.
+	 */
+	int getWaiters() {
+		return notifier.getWaiters();
+	}
+
+	/** Get the number of subscribers.
+	 * @return Number of subscribers.
+	 */
+	int getSubscriberCount() {
+		return subscribers.size();
+	}
+
+	/** Get the lag of the clients reading the channel.
+	 * @param lags - Map in which put the number of events not read yet by each client, keyed by {@code channel/host}.
+	 */
+	void getLags(Map<String, Integer> lags) {
+		int sequence = notifier.getSequence();
+		for(Map.Entry<String, AtomicInteger> reader:readers.entrySet())
+			lags.put(name + "/" + reader.getKey(), Math.max(sequence - reader.getValue().get(), 0));
+		for(Subscriber subscriber:subscribers.values())
+			lags.put(name + "/" + subscriber.getHost(), Math.max(sequence - subscriber.getCursor(), 0));
+	}
+
+	/** Set the cursor of a client reading the channel. The cursor of a client is allocated once, on its first read.
+	 * @param host - Client host.
+	 * @param cursor - Index of the next event read by the client.
+	 */
+	void setReader(String host, int cursor) {
+		AtomicInteger reader = readers.get(host);
+		if(reader == null) {
+			reader = new AtomicInteger();
+			AtomicInteger current = readers.putIfAbsent(host, reader);
+			if(current != null)
+				reader = current;
+		}
+		reader.set(cursor);
+	}
+
+	/** Forget the cursor of a client which does not read the channel anymore.
+	 * @param host - Client host.
+	 */
+	void removeReader(String host) {
+		readers.remove(host);
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Read events from the buffer, or from the log if they are not in the buffer anymore.<br>
+	 * A range starting before the buffer is read from the log up to the floor of the buffer, then from the buffer.
+	 * @param fromIndex - Index of the first event.
+	 * @param maxCount - Maximum number of events.
+	 * @return Published events from the index.
+	 * @throws RemoteException if the log could not be read.
+	 */
+	List<Event> read(int fromIndex, int maxCount) throws RemoteException {
+		EventBuffer buffer = this.buffer;
+		List<Event> events = buffer.read(fromIndex, maxCount);
+		if(events != null)
+			return events;
+		try {
+			int toIndex = (int) Math.min((long) fromIndex + maxCount, buffer.getCursor());
+			int floor = buffer.getFloor();
+			events = eventLog.read(fromIndex, (floor > fromIndex ? Math.min(floor, toIndex) : toIndex) - fromIndex);
+			int index = fromIndex + events.size();
+			if(index < toIndex) {
+				List<Event> hot = buffer.read(index, toIndex - index);
+				events.addAll(hot != null ? hot : eventLog.read(index, toIndex - index));	//Lapped by the writer
+			}
+			return events;
+		} catch (IOException e) {
+			throw new RemoteException("Events could not be read", e);
+		}
+	}
+
+	/** Save and publish events.
+	 * @param author - Author of the events.
+	 * @param e - Events to publish, in order.
+	 * @return Index of the first event.
+	 * @throws RemoteException if the events could not be saved.
+	 */
+	int append(String author, List<String> e) throws RemoteException {
+		if(e.isEmpty())
+			return buffer.getCursor();
+		writeLock.lock();
+		try {
+			return write(author, e);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/** Save and publish a numbered batch of events, after the previous batch of the same author.<br>
+	 * A batch arrived before the previous one is kept until the previous one is published, so the caller may wait for the result or be called back.
+	 * @param author - Author of the events.
+	 * @param e - Events to publish, in order.
+	 * @param sequence - Number of the batch for this author, {@code 0} to start a new sequence.
+	 * @param timeout - Maximum time to wait for the previous batch, in milliseconds.
+	 * @return Future completed with the index of the first event once the batch is published, or with a {@code RemoteException}
+	 * if the events could not be saved, if the previous batch did not arrive in time, if too many batches wait or if the author disconnected.
+	 */
+	CompletableFuture<Integer> append(String author, List<String> e, int sequence, long timeout) {
+		Batch batch = new Batch(author, e, sequence);
+		List<Batch> done = new ArrayList<Batch>();
+		writeLock.lock();
+		try {
+			Integer expected = sequences.get(author);
+			if(sequence == 0 || (expected != null && expected == sequence))
+				publish(batch, done);
+			else
+				park(batch, timeout, done);
+		} finally {
+			writeLock.unlock();
+		}
+		for(Batch completed:done)	//The callers are never run under the lock
+			completed.complete();
+		return batch.result;
+	}
+
+	/** Publish events copied from another server, with their indexes, authors and times.<br>
+	 * The events already in the channel are skipped, the others must follow the last event of the channel.
+	 * @param events - Events to publish, in index order.
+	 * @throws RemoteException if an event is missing before the events or if the events could not be saved.
+	 */
+	void replicate(List<Event> events) throws RemoteException {
+		writeLock.lock();
+		try {
+			int cursor = buffer.getCursor();
+			int skipped = 0;
+			while(skipped < events.size() && events.get(skipped).getIndex() < cursor)
+				skipped++;
+			if(skipped == events.size())
+				return;
+			if(events.get(skipped).getIndex() != cursor)
+				throw new RemoteException("Event " + cursor + " of " + name + " is missing");
+			publish(new ArrayList<Event>(events.subList(skipped, events.size())));
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/** Wait until an event is published at the cursor.
+	 * @param host - Client host, {@code null} for a reader of the server itself.
+	 * @param cursor - Index of the awaited event.
+	 * @param cancelled - Condition checked on each wakeup, the wait stops when it is {@code true}.
+	 * @throws InterruptedException if any thread interrupted the current thread.
+	 */
+	void await(String host, int cursor, BooleanSupplier cancelled) throws InterruptedException {
+		notifier.await(host, cursor, cancelled);
+	}
+
+	/** Run a task once an event is published at the cursor, without waiting for it.
+	 * @param host - Client host.
+	 * @param cursor - Index of the awaited event.
+	 * @param task - Task to run.
+	 */
+	void listen(String host, int cursor, Runnable task) {
+		notifier.listen(host, cursor, task);
+	}
+
+	/** Get a page of events from a cursor, without waiting.
+	 * @param cursor - Index of the first event.
+	 * @param maxCount - Maximum number of events in the page.
+	 * @param maxBytes - Maximum size of the events of the page, the page always holds at least one event.
+	 * @return Page of events with the cursor of the next page.
+	 * @throws RemoteException if the log could not be read.
+	 */
+	EventPage getPage(int cursor, int maxCount, int maxBytes) throws RemoteException {
+		int end = buffer.getCursor();
+		List<Event> events = read(cursor, maxCount);
+		int bytes = 0;
+		for(int i=0;i<events.size();i++) {
+			bytes += events.get(i).getSize();
+			if(bytes > maxBytes && i != 0) {
+				events = new ArrayList<Event>(events.subList(0, i));
+				break;
+			}
+		}
+		return new EventPage(events, cursor + events.size(), end);
+	}
+
+	/** Get a page of the events accepted by a filter. The rejected events are not returned but the cursor of the next page moves past them.
+	 * @param cursor - Index of the first event.
+	 * @param maxCount - Maximum number of events read for the page.
+	 * @param maxBytes - Maximum size of the events read for the page, in bytes.
+	 * @param host - Session id of the reader.
+	 * @param filter - Events to return, {@code null} to return all the events.
+	 * @return Page of the accepted events, empty if all the read events are rejected.
+	 * @throws RemoteException if the log could not be read.
+	 */
+	EventPage getPage(int cursor, int maxCount, int maxBytes, String host, EventFilter filter) throws RemoteException {
+		EventPage page = getPage(cursor, maxCount, maxBytes);
+		if(filter == null)
+			return page;
+		List<Event> accepted = new ArrayList<Event>(page.getEvents().size());
+		for(Event event:page.getEvents())
+			if(filter.acceptsAuthor(host, event.getAuthor()) && filter.acceptsEvent(event.getEvent()))
+				accepted.add(event);
+		return new EventPage(accepted, page.getNextCursor(), page.getEnd());
+	}
+
+	/** Start pushing the events to a subscriber, in place of the previous subscriber of the same client.
+	 * @param subscriber - New subscriber.
+	 */
+	void subscribe(Subscriber subscriber) {
+		Subscriber previous = subscribers.put(subscriber.getHost(), subscriber);
+		if(previous != null)
+			remove(previous);
+		EventFilter filter = subscriber.getFilter();
+		Map.Entry<String, String> field = filter == null || filter.getFields().isEmpty() ? null : filter.getFields().entrySet().iterator().next();
+		indexLock.lock();
+		try {
+			if(filter != null && filter.getAuthors() != null) {
+				for(String author:filter.getAuthors())
+					index(byAuthor, author, subscriber);
+			} else if(filter != null && filter.getPrefix() != null) {
+				prefixLengths.add(filter.getPrefix().length());
+				index(byPrefix, filter.getPrefix(), subscriber);
+			} else if(field != null && EventFilter.isIndexable(field.getValue())) {
+				String key = EventFilter.quote(field.getKey());
+				Map<String, Set<Subscriber>> values = byField.get(key);
+				if(values == null)
+					byField.put(key, values = new ConcurrentHashMap<String, Set<Subscriber>>());
+				index(values, field.getValue(), subscriber);
+				index(values, EventFilter.quote(field.getValue()), subscriber);
+			} else
+				unindexed.add(subscriber);
+		} finally {
+			indexLock.unlock();
+		}
+		subscriber.start();
+	}
+
+	/** Stop pushing the events to a subscriber.
+	 * @param subscriber - Subscriber to remove.
+	 * @param reason - Why the subscriber is removed.
+	 */
+	void unsubscribe(Subscriber subscriber, String reason) {
+		remove(subscriber);
+		if(subscribers.remove(subscriber.getHost(), subscriber))
+			logger.log(subscriber.getHost() + " unsubscribed from " + name + ", " + reason + ".");
+	}
+
+	/** Forget a disconnected client and wake up its readers so they check their cancel condition.
+	 * @param host - Client host.
+	 */
+	void disconnect(String host) {
+		Subscriber subscriber = subscribers.remove(host);
+		if(subscriber != null)
+			remove(subscriber);
+		readers.remove(host);
+		Map<Integer, Batch> batches;
+		writeLock.lock();
+		try {
+			sequences.remove(host);
+			batches = pending.remove(host);
+		} finally {
+			writeLock.unlock();
+		}
+		if(batches != null)
+			for(Batch batch:batches.values())
+				batch.fail(new RemoteException("Batch " + batch.sequence + " of " + host + " dropped, the client disconnected"));
+		notifier.cancel(host);
+	}
+
+	/** Force the events on the disk.
+	 */
+	void sync() {
+		eventLog.sync();
+	}
+
+	/** Stop the reducer, the subscribers and close the log.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	void close() throws IOException {
+		if(materializer != null)
+			materializer.close();
+		for(Subscriber subscriber:subscribers.values())
+			subscriber.close();
+		eventLog.close();
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private EventBuffer newBuffer(int hotEvents, long hotBytes) throws IOException {
+		int cursor = eventLog.getNextIndex();
+		EventBuffer buffer = new EventBuffer(hotEvents, hotBytes, cursor);
+		for(int index=Math.max(cursor - buffer.getCapacity(), 0);index<cursor;index+=PRELOAD_SIZE)
+			buffer.preload(eventLog.read(index, Math.min(PRELOAD_SIZE, cursor - index)));
+		return buffer;
+	}
+
+	private void publish(Batch batch, List<Batch> done) {
+		while(batch != null) {	//Each batch published may fill the gap of the next one
+			try {
+				batch.index = batch.events.isEmpty() ? buffer.getCursor() : write(batch.author, batch.events);
+			} catch (RemoteException e) {
+				batch.error = e;
+				done.add(batch);
+				return;
+			}
+			done.add(batch);
+			sequences.put(batch.author, batch.sequence + 1);
+			Map<Integer, Batch> batches = pending.get(batch.author);
+			if(batches == null)
+				return;
+			Batch next = batches.remove(batch.sequence + 1);
+			if(batches.isEmpty())
+				pending.remove(batch.author);
+			batch = next;
+		}
+	}
+
+	private void park(final Batch batch, long timeout, List<Batch> done) {
+		Map<Integer, Batch> batches = pending.get(batch.author);
+		if(batches == null)
+			pending.put(batch.author, batches = new HashMap<Integer, Batch>());
+		if(batches.size() >= MAX_PENDING_BATCHES || batches.containsKey(batch.sequence)) {
+			batch.error = new RemoteException("Batch " + batch.sequence + " of " + batch.author + " refused, " + batches.size() + " batches already wait for a previous one");
+			done.add(batch);
+			return;
+		}
+		batches.put(batch.sequence, batch);
+		try {
+			timer.schedule(new Runnable() {
+				public void run() {
+					expire(batch);
+				}
+			}, timeout, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			//The server is closed, the batch waits for its disconnection
+		}
+	}
+
+	private void expire(Batch batch) {
+		writeLock.lock();
+		try {
+			Map<Integer, Batch> batches = pending.get(batch.author);
+			if(batches == null || !batches.remove(batch.sequence, batch))
+				return;
+			if(batches.isEmpty())
+				pending.remove(batch.author);
+		} finally {
+			writeLock.unlock();
+		}
+		batch.fail(new RemoteException("Batch " + batch.sequence + " of " + batch.author + " arrived without the previous one"));
+	}
+
+	private int write(String author, List<String> e) throws RemoteException {
+		LocalDateTime time = LocalDateTime.now();
+		int firstIndex = buffer.getCursor();
+		List<Event> events = new ArrayList<Event>(e.size());
+		for(String string:e) {
+			Event event = new Event(author, time, string);
+			event.setIndex(firstIndex + events.size());
+			events.add(event);
+		}
+		publish(events);
+		return firstIndex;
+	}
+
+	private void publish(List<Event> events) throws RemoteException {
+		long start = System.nanoTime();
+		try {
+			eventLog.append(events);
+			metrics.recordPersistence(start);
+		} catch (IOException exception) {
+			throw new RemoteException("Events could not be saved", exception);
+		}
+		buffer.publish(events);
+		metrics.published(events.size());
+		notifier.publish(buffer.getCursor());
+		int from = 0;
+		for(int i=1;i<=events.size();i++) {	//The subscribers are offered the events by runs of the same author
+			if(i < events.size() && events.get(i).getAuthor().equals(events.get(from).getAuthor()))
+				continue;
+			List<Event> run = from == 0 && i == events.size() ? events : events.subList(from, i);
+			String author = events.get(from).getAuthor();
+			offer(unindexed, null, author, run);
+			Set<Subscriber> set = byAuthor.get(author);
+			if(set != null)
+				offer(set, null, author, run);
+			Set<Subscriber> hostSet = author.indexOf('#') < 0 ? null : byAuthor.get(Event.getHost(author));	//The subscribers to all the sessions of the host
+			if(hostSet != null)
+				offer(hostSet, set, author, run);
+			if(!byPrefix.isEmpty() || !byField.isEmpty())
+				offerIndexed(author, run);
+			from = i;
+		}
+	}
+
+	private void offer(Set<Subscriber> subscribers, Set<Subscriber> offered, String author, List<Event> events) {
+		for(Subscriber subscriber:subscribers)
+			if((offered == null || !offered.contains(subscriber)) && !subscriber.offer(author, events))
+				unsubscribe(subscriber, "its queue is full");
+	}
+
+	private void offerIndexed(String author, List<Event> events) {
+		Map<Subscriber, List<Event>> accepted = new LinkedHashMap<Subscriber, List<Event>>();
+		List<String> values = new ArrayList<String>();
+		for(Event event:events) {
+			String string = event.getEvent();
+			for(int length:prefixLengths) {
+				if(length > string.length())
+					break;
+				add(accepted, byPrefix.get(string.substring(0, length)), event);
+			}
+			for(Map.Entry<String, Map<String, Set<Subscriber>>> field:byField.entrySet()) {
+				values.clear();
+				EventFilter.readValues(string, field.getKey(), values);
+				for(String value:values)
+					add(accepted, field.getValue().get(value), event);
+			}
+		}
+		for(Map.Entry<Subscriber, List<Event>> entry:accepted.entrySet())
+			if(!entry.getKey().offer(author, entry.getValue()))
+				unsubscribe(entry.getKey(), "its queue is full");
+	}
+
+	private static void add(Map<Subscriber, List<Event>> accepted, Set<Subscriber> subscribers, Event event) {
+		if(subscribers == null)
+			return;
+		for(Subscriber subscriber:subscribers) {
+			List<Event> events = accepted.get(subscriber);
+			if(events == null)
+				accepted.put(subscriber, events = new ArrayList<Event>());
+			if(events.isEmpty() || events.get(events.size()-1) != event)	//The field may be found several times in the event
+				events.add(event);
+		}
+	}
+
+	private static void index(Map<String, Set<Subscriber>> index, String key, Subscriber subscriber) {
+		Set<Subscriber> set = index.get(key);
+		if(set == null)
+			index.put(key, set = ConcurrentHashMap.newKeySet());
+		set.add(subscriber);
+	}
+
+	private static boolean unindex(Map<String, Set<Subscriber>> index, Subscriber subscriber) {
+		boolean pruned = false;
+		for(Iterator<Set<Subscriber>> sets = index.values().iterator();sets.hasNext();) {
+			Set<Subscriber> set = sets.next();
+			if(set.remove(subscriber) && set.isEmpty()) {
+				sets.remove();
+				pruned = true;
+			}
+		}
+		return pruned;
+	}
+
+	private void remove(Subscriber subscriber) {
+		subscriber.close();
+		indexLock.lock();
+		try {
+			if(unindexed.remove(subscriber))
+				return;
+			unindex(byAuthor, subscriber);
+			if(unindex(byPrefix, subscriber)) {
+				Set<Integer> lengths = new HashSet<Integer>();
+				for(String prefix:byPrefix.keySet())
+					lengths.add(prefix.length());
+				prefixLengths.retainAll(lengths);
+			}
+			for(Iterator<Map<String, Set<Subscriber>>> fields = byField.values().iterator();fields.hasNext();) {
+				Map<String, Set<Subscriber>> values = fields.next();
+				unindex(values, subscriber);
+				if(values.isEmpty())
+					fields.remove();
+			}
+		} finally {
+			indexLock.unlock();
+		}
+	}
+
+	/** Numbered batch of events, with the future of its caller.
+	 */
+	private static class Batch {
+
+		private String author;
+		private List<String> events;
+		private int sequence;
+		private CompletableFuture<Integer> result;
+		private int index;
+		private RemoteException error;
+
+		private Batch(String author, List<String> events, int sequence) {
+			this.author = author;
+			this.events = events;
+			this.sequence = sequence;
+			this.result = new CompletableFuture<Integer>();
+		}
+
+		private void complete() {
+			if(error == null)
+				result.complete(index);
+			else
+				result.completeExceptionally(error);
+		}
+
+		private void fail(RemoteException error) {
+			result.completeExceptionally(error);
+		}
+	}
+}
@@ -39,12 +39,21 @@ public class Event implements Serializable{
 	/***********************/
 	
 	/** Get the author.
-	 * @return Author of the event.
+	 * @return Author of the event: the session id of the client, or its ip for the events published without a session.
 	 */
 	public String getAuthor() {
 		return author;
 	}
 
+	/** Get the host of an author.
+	 * @param author - Session id or ip of the author.
+	 * @return Ip of the author.
+	 */
+	public static String getHost(String author) {
+		int separator = author.indexOf('#');
+		return separator < 0 ? author : author.substring(0, separator);
+	}
+
 	/** Get the date/time.
 	 * @return - Date/time of the event.
 	 */
@@ -66,6 +75,27 @@ public class Event implements Serializable{
 		return index;
 	}
 
+	/** Get the size of the event string once encoded in UTF-8.
+	 * @return - Size of the event in bytes.
+	 */
+	public int getSize() {
+		int size = 0;
+		for(int i=0;i<event.length();i++) {
+			char c = event.charAt(i);
+			if(c < 0x80)
+				size++;
+			else if(c < 0x800)
+				size += 2;
+			else if(Character.isHighSurrogate(c)) {
+				size += 4;
+				i++;
+			}
+			else
+				size += 3;
+		}
+		return size;
+	}
+
 	/** Set the index of the event.
 	 * @param index - Index of the event.
 	 */
@@ -0,0 +1,165 @@
+package fr.eve.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** The {@code EventBuffer} class is a sequenced ring buffer holding the most recent events of the server.<br><br>
+ * There is a single writer: the publishers must be serialized by the caller. Each event is stored in the slot {@code index % capacity}
+ * then the cursor is advanced, so a reader which sees the cursor also sees the events before it.<br>
+ * The readers never lock. Each copied slot is checked against the expected index, a reader lapped by the writer gets {@code null} and reads the log instead.<br>
+ * The buffer is the hot window of the channel: it is bounded both by its capacity and by the size of its events.
+ * When the events exceed {@code maxBytes}, the oldest ones are released until they fit, so a few large events do not fill the heap.
+ * The events before the floor are only read from the log.
+ */
+class EventBuffer {
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private AtomicReferenceArray<Event> slots;
+	private int[] sizes;
+	private int mask;
+	private long maxBytes;
+	private AtomicInteger cursor;
+	private volatile int floor;
+	private volatile long bytes;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code EventBuffer} class.
+	 * @param capacity - Number of events kept in the buffer, rounded up to a power of two.
+	 * @param maxBytes - Maximum size of the events kept in the buffer, the last event is always kept.
+	 * @param cursor - Index of the next published event.
+	 */
+	EventBuffer(int capacity, long maxBytes, int cursor) {
+		int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+		this.slots = new AtomicReferenceArray<Event>(size);
+		this.sizes = new int[size];
+		this.mask = size - 1;
+		this.maxBytes = maxBytes;
+		this.cursor = new AtomicInteger(cursor);
+		this.floor = cursor;
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the index of the next published event, which is also the number of published events.
+	 * @return Cursor.
+	 */
+	int getCursor() {
+		return cursor.get();
+	}
+
+	/** Get the number of events kept in the buffer.
+	 * @return Capacity.
+	 */
+	int getCapacity() {
+		return slots.length();
+	}
+
+	/** Get the index of the oldest event kept in the buffer.
+	 * @return Floor, the events before it are only in the log.
+	 */
+	int getFloor() {
+		return floor;
+	}
+
+	/** Get the size of the events kept in the buffer.
+	 * @return Size of the events once encoded in UTF-8, in bytes.
+	 */
+	long getBytes() {
+		return bytes;
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Fill the buffer with events already published, used on startup to warm the buffer with the end of the log.<br>
+	 * The events may be given in several calls, each one following the previous one.
+	 * @param events - Events preceding the cursor, in index order.
+	 */
+	void preload(List<Event> events) {
+		if(!events.isEmpty() && floor == cursor.get())
+			floor = events.get(0).getIndex();
+		for(Event event:events)
+			put(event.getIndex(), event);
+	}
+
+	/** Publish an event. Only one thread at a time may publish.
+	 * @param event - Event to publish, its index must be the cursor.
+	 */
+	void publish(Event event) {
+		int index = cursor.get();
+		if(event.getIndex() != index)
+			throw new IllegalStateException("Event " + event.getIndex() + " published at index " + index);
+		put(index, event);
+		cursor.lazySet(index + 1);
+	}
+
+	/** Publish a batch of events with a single move of the cursor, the readers see either none or all of them.
+	 * Only one thread at a time may publish.
+	 * @param events - Events to publish, in index order. The index of the first one must be the cursor.
+	 */
+	void publish(List<Event> events) {
+		int index = cursor.get();
+		for(Event event:events) {
+			if(event.getIndex() != index)
+				throw new IllegalStateException("Event " + event.getIndex() + " published at index " + index);
+			put(index, event);
+			index++;
+		}
+		cursor.lazySet(index);
+	}
+
+	/** Read the published events from an index.
+	 * @param fromIndex - Index of the first event to read.
+	 * @param maxCount - Maximum number of events to read.
+	 * @return Events in index order, {@code null} if some of them are not in the buffer anymore.
+	 */
+	List<Event> read(int fromIndex, int maxCount) {
+		int end = cursor.get();
+		int toIndex = (int) Math.min((long) fromIndex + maxCount, end);
+		if(fromIndex < floor || fromIndex < 0)
+			return null;
+
+		List<Event> events = new ArrayList<Event>(Math.max(toIndex - fromIndex, 0));
+		for(int i=fromIndex;i<toIndex;i++) {
+			Event event = slots.get(i & mask);
+			if(event == null || event.getIndex() != i)
+				return null;
+			events.add(event);
+		}
+		return events;
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void put(int index, Event event) {
+		int slot = index & mask;
+		long bytes = this.bytes;
+		int floor = Math.max(this.floor, index - slots.length() + 1);
+		if(floor > this.floor && slots.get(slot) != null)
+			bytes -= sizes[slot];	//Lapped event
+		sizes[slot] = event.getSize();
+		slots.lazySet(slot, event);
+		bytes += sizes[slot];
+		while(bytes > maxBytes && floor < index) {
+			int oldest = floor & mask;
+			bytes -= sizes[oldest];
+			slots.lazySet(oldest, null);
+			floor++;
+		}
+		this.floor = floor;
+		this.bytes = bytes;
+	}
+}
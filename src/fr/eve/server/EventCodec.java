@@ -0,0 +1,300 @@
+package fr.eve.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/** The {@code EventCodec} class is used to encode events in a compact binary format, for both the storage and the transport.<br><br>
+ * An event is written as {@code [index][time][author][length][event]}:
+ * <ul>
+ * <li>the index is a varint, relative to the previous event if there is one;</li>
+ * <li>the time is a count of microseconds since the epoch (UTC), a zigzag varint relative to the previous event if there is one;</li>
+ * <li>the author is the varint id of a dictionary entry. An unknown author gets the next id and its name follows in UTF-8;
+ * once the dictionary holds {@code maxAuthors} entries, an unknown author is written the same way but is not added, so it is written inline each time;</li>
+ * <li>the event is written in UTF-8, after its varint length.</li>
+ * </ul>
+ * The dictionary is kept by the codec, so the same instance must be used to encode and decode a stream. A codec may be shared by
+ * several readers if all the authors are added by a single writer before the events using them are published.
+ * The dictionary is bounded because every session id is an author: the authors of short-lived sessions cost a few bytes per event once it is full, instead of memory forever.
+ */
+public class EventCodec {
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Size of the first buffer allocated to read a string, it grows as the bytes arrive so a corrupted length cannot allocate more than the input holds.
+	 */
+	private static final int READ_CHUNK = 64 * 1024;
+
+	/** Default maximum number of authors in the dictionary.
+	 */
+	public static final int DEFAULT_MAX_AUTHORS = 16 * 1024;
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private List<String> authors;
+	private Map<String, Integer> ids;
+	private int maxAuthors;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code EventCodec} class, with an empty dictionary of {@code DEFAULT_MAX_AUTHORS} authors at most.
+	 */
+	public EventCodec() {
+		this(DEFAULT_MAX_AUTHORS);
+	}
+
+	/** Builder of the {@code EventCodec} class, with an empty dictionary.
+	 * @param maxAuthors - Maximum number of authors in the dictionary, the encoder and the decoder of a stream must use the same one.
+	 */
+	public EventCodec(int maxAuthors) {
+		this.authors = new CopyOnWriteArrayList<String>();
+		this.ids = new ConcurrentHashMap<String, Integer>();
+		this.maxAuthors = maxAuthors;
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the id of an author.
+	 * @param author - Author of an event.
+	 * @return Id of the author, {@code -1} if the author is not in the dictionary.
+	 */
+	public int getAuthorId(String author) {
+		Integer id = ids.get(author);
+		return id == null ? -1 : id;
+	}
+
+	/** Add an author to the dictionary, if it is not full.
+	 * @param author - Author to add.
+	 * @return Id of the author, {@code -1} if the dictionary is full.
+	 */
+	public int addAuthor(String author) {
+		int id = getAuthorId(author);
+		if(id != -1)
+			return id;
+		if(authors.size() >= maxAuthors)
+			return -1;
+		authors.add(author);
+		ids.put(author, authors.size() - 1);
+		return authors.size() - 1;
+	}
+
+	/** Get the number of authors in the dictionary.
+	 * @return Number of authors.
+	 */
+	public int getAuthorCount() {
+		return authors.size();
+	}
+
+	/** Get the maximum number of authors in the dictionary.
+	 * @return Maximum number of authors.
+	 */
+	public int getMaxAuthors() {
+		return maxAuthors;
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Encode an event.
+	 * @param event - Event to encode.
+	 * @param previous - Previous event of the stream, {@code null} to encode the index and the time as absolute values.
+	 * @param output - Output in which write the event.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void encode(Event event, Event previous, DataOutput output) throws IOException {
+		writeVarLong(output, zigzag(event.getIndex() - (previous == null ? 0 : (long) previous.getIndex())));
+		writeVarLong(output, zigzag(toMicros(event.getDateTime()) - (previous == null ? 0 : toMicros(previous.getDateTime()))));
+
+		int id = getAuthorId(event.getAuthor());
+		if(id == -1) {	//Next id, followed by the name which is only added if the dictionary is not full
+			writeVarLong(output, authors.size());
+			writeString(output, event.getAuthor());
+			addAuthor(event.getAuthor());
+		}
+		else
+			writeVarLong(output, id);
+		writeString(output, event.getEvent());
+	}
+
+	/** Decode an event.
+	 * @param previous - Previous event of the stream, {@code null} if the index and the time were encoded as absolute values.
+	 * @param input - Input from which read the event.
+	 * @return Decoded event.
+	 * @throws IOException if an I/O error occurs or if the author is not in the dictionary.
+	 */
+	public Event decode(Event previous, DataInput input) throws IOException {
+		long index = unzigzag(readVarLong(input)) + (previous == null ? 0 : previous.getIndex());
+		long micros = unzigzag(readVarLong(input)) + (previous == null ? 0 : toMicros(previous.getDateTime()));
+
+		long id = readVarLong(input);
+		String author;
+		if(id >= 0 && id < authors.size())
+			author = authors.get((int) id);
+		else if(id == authors.size()) {
+			author = readString(input);
+			addAuthor(author);
+		}
+		else
+			throw new IOException("Unknown author " + id);
+
+		Event event = new Event(author, toDateTime(micros), readString(input));
+		event.setIndex((int) index);
+		return event;
+	}
+
+	/** Encode a list of events with a new codec, each event relative to the previous one.
+	 * @param events - Events to encode, in index order.
+	 * @param output - Output in which write the events.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static void writeEvents(List<Event> events, DataOutput output) throws IOException {
+		output.writeInt(events.size());
+		EventCodec codec = new EventCodec();
+		Event previous = null;
+		for(Event event:events) {
+			codec.encode(event, previous, output);
+			previous = event;
+		}
+	}
+
+	/** Decode a list of events written by {@code writeEvents}.
+	 * @param input - Input from which read the events.
+	 * @return Decoded events.
+	 * @throws IOException if an I/O error occurs or if the size is negative.
+	 */
+	public static List<Event> readEvents(DataInput input) throws IOException {
+		int size = input.readInt();
+		if(size < 0)
+			throw new IOException("Invalid number of events " + size);
+		List<Event> events = new ArrayList<Event>(Math.min(size, 1024));
+		EventCodec codec = new EventCodec();
+		Event previous = null;
+		for(int i=0;i<size;i++) {
+			previous = codec.decode(previous, input);
+			events.add(previous);
+		}
+		return events;
+	}
+
+	/** Encode a list of events with {@code writeEvents} in an array, as the batches pushed to the clients.
+	 * @param events - Events to encode, in index order.
+	 * @return Encoded events.
+	 */
+	public static byte[] toBytes(List<Event> events) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			writeEvents(events, new DataOutputStream(bytes));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);	//Never thrown by an array
+		}
+		return bytes.toByteArray();
+	}
+
+	/** Decode a list of events encoded by {@code toBytes}.
+	 * @param bytes - Encoded events.
+	 * @return Decoded events.
+	 * @throws IOException if the events are truncated or corrupted.
+	 */
+	public static List<Event> fromBytes(byte[] bytes) throws IOException {
+		return readEvents(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	/** Read the absolute index written at the beginning of an event, without decoding the event.
+	 * @param buffer - Buffer holding the encoded event.
+	 * @param position - Position of the encoded event in the buffer.
+	 * @return Index of the event.
+	 */
+	public static long readIndex(ByteBuffer buffer, int position) {
+		long value = 0;
+		for(int shift=0;shift<64;shift+=7) {
+			byte b = buffer.get(position++);
+			value |= (long) (b & 0x7F) << shift;
+			if(b >= 0)
+				break;
+		}
+		return unzigzag(value);
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private static long toMicros(LocalDateTime time) {
+		return time.toEpochSecond(ZoneOffset.UTC) * 1000000 + time.getNano() / 1000;
+	}
+
+	private static LocalDateTime toDateTime(long micros) {
+		return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1000000L), (int) Math.floorMod(micros, 1000000L) * 1000, ZoneOffset.UTC);
+	}
+
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static void writeVarLong(DataOutput output, long value) throws IOException {
+		while((value & ~0x7FL) != 0) {
+			output.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		output.writeByte((int) value);
+	}
+
+	private static long readVarLong(DataInput input) throws IOException {
+		long value = 0;
+		for(int shift=0;shift<64;shift+=7) {
+			byte b = input.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if(b >= 0)
+				return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	private static void writeString(DataOutput output, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(output, bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(DataInput input) throws IOException {
+		long length = readVarLong(input);
+		if(length < 0 || length > Integer.MAX_VALUE - 8)
+			throw new IOException("Invalid string length " + length);
+		byte[] bytes = new byte[(int) Math.min(length, READ_CHUNK)];
+		input.readFully(bytes);
+		while(bytes.length < length) {
+			int read = bytes.length;
+			bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * read));
+			input.readFully(bytes, read, bytes.length - read);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,289 @@
+package fr.eve.server;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** The {@code EventFilter} class represent the events a subscriber wants to receive, checked by the server before sending anything.<br><br>
+ * A filter is built by the client with the chained methods, each one narrowing the accepted events:
+ * <pre>new EventFilter().excludeSelf().withPrefix("chat:").withField("room", "42")</pre>
+ * The authors are checked once per published batch. The channel indexes the subscribers by author, by prefix or by the value of their first field,
+ * so a publish only reaches the subscriptions which may accept it. The payload conditions are compiled once, when the filter is first used.
+ */
+public class EventFilter implements Serializable{
+
+	private static final long serialVersionUID = 2207439685119043258L;
+
+	private static final String VALUE_ENDS = ",}] \t\r\n";
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private boolean excludeSelf;
+	private Set<String> authors;
+	private Set<String> excludedAuthors;
+	private String prefix;
+	private Map<String, String> fields;
+
+	private transient volatile String[] keys;
+	private transient String[] values;
+	private transient String[] quotedValues;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code EventFilter} class.<br>
+	 * The new filter accepts all the events.
+	 */
+	public EventFilter() {
+		this.excludedAuthors = new LinkedHashSet<String>();
+		this.fields = new LinkedHashMap<String, String>();
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the accepted authors.
+	 * @return Authors whose events are accepted, {@code null} if all the authors are accepted.
+	 */
+	public Set<String> getAuthors() {
+		return authors == null ? null : Collections.unmodifiableSet(authors);
+	}
+
+	/** Check if the events of the subscriber itself are rejected.
+	 * @return {@code true} if {@code excludeSelf} was called, {@code false} otherwise.
+	 */
+	public boolean isExcludeSelf() {
+		return excludeSelf;
+	}
+
+	/** Get the rejected authors.
+	 * @return Authors whose events are rejected.
+	 */
+	public Set<String> getExcludedAuthors() {
+		return Collections.unmodifiableSet(excludedAuthors);
+	}
+
+	/** Get the prefix of the accepted events.
+	 * @return Prefix, {@code null} if the events are not filtered by prefix.
+	 */
+	public String getPrefix() {
+		return prefix;
+	}
+
+	/** Get the fields the accepted events must have.
+	 * @return Values of the fields by name.
+	 */
+	public Map<String, String> getFields() {
+		return Collections.unmodifiableMap(fields);
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Reject the events of the subscriber itself.
+	 * @return This filter.
+	 */
+	public EventFilter excludeSelf() {
+		excludeSelf = true;
+		return this;
+	}
+
+	/** Accept only the events of some authors. Called several times, the authors are added.
+	 * @param authors - Session id of the accepted authors, or ip to accept all the sessions of a host.
+	 * @return This filter.
+	 */
+	public EventFilter fromAuthors(String... authors) {
+		if(this.authors == null)
+			this.authors = new LinkedHashSet<String>();
+		this.authors.addAll(Arrays.asList(authors));
+		return this;
+	}
+
+	/** Reject the events of some authors.
+	 * @param authors - Session id of the rejected authors, or ip to reject all the sessions of a host.
+	 * @return This filter.
+	 */
+	public EventFilter excludeAuthors(String... authors) {
+		excludedAuthors.addAll(Arrays.asList(authors));
+		return this;
+	}
+
+	/** Accept only the events starting with a prefix.
+	 * @param prefix - Prefix of the accepted events.
+	 * @return This filter.
+	 */
+	public EventFilter withPrefix(String prefix) {
+		this.prefix = prefix;
+		return this;
+	}
+
+	/** Accept only the JSON events having a field equal to a value.<br>
+	 * The field is looked up at any depth of the event. A string value is compared with its JSON encoding,
+	 * any other value (number, boolean, {@code null}) with its literal.
+	 * @param name - Name of the field.
+	 * @param value - Value of the field.
+	 * @return This filter.
+	 */
+	public EventFilter withField(String name, String value) {
+		fields.put(name, value);
+		keys = null;
+		return this;
+	}
+
+	/** Check if the events of an author are accepted.
+	 * @param host - Session id of the subscriber.
+	 * @param author - Session id of the author.
+	 * @return {@code true} if the events of the author may be accepted, {@code false} otherwise.
+	 */
+	public boolean acceptsAuthor(String host, String author) {
+		if(excludeSelf && author.equals(host))
+			return false;
+		if(authors == null && excludedAuthors.isEmpty())
+			return true;
+		String authorHost = Event.getHost(author);
+		if(authors != null && !authors.contains(author) && !authors.contains(authorHost))
+			return false;
+		return !excludedAuthors.contains(author) && !excludedAuthors.contains(authorHost);
+	}
+
+	/** Check if an event is accepted, once its author is accepted.
+	 * @param event - Event string.
+	 * @return {@code true} if the event is accepted, {@code false} otherwise.
+	 */
+	public boolean acceptsEvent(String event) {
+		if(prefix != null && !event.startsWith(prefix))
+			return false;
+		if(fields.isEmpty())
+			return true;
+		if(keys == null)
+			compile();
+		for(int i=0;i<keys.length;i++)
+			if(!hasField(event, keys[i], values[i], quotedValues[i]))
+				return false;
+		return true;
+	}
+
+	/** Check if the events having a field equal to a value can be found by reading the values of the field with {@code readValues}.
+	 * @param value - Value of the field.
+	 * @return {@code true} if the value is read as itself or as its JSON encoding, {@code false} if it starts with a quote or holds a delimiter.
+	 */
+	static boolean isIndexable(String value) {
+		if(value.startsWith("\""))
+			return false;
+		for(int i=0;i<value.length();i++)
+			if(VALUE_ENDS.indexOf(value.charAt(i)) >= 0)
+				return false;
+		return true;
+	}
+
+	/** Read the values of a field in an event, as they are written: a string with its quotes, any other value up to its end.<br>
+	 * The field is looked up as {@code acceptsEvent} does, so an event accepted for an indexable value has this value or its JSON encoding among the read values.
+	 * @param event - Event string.
+	 * @param key - JSON encoding of the field name.
+	 * @param values - List to which add the values, one per occurrence of the field.
+	 */
+	static void readValues(String event, String key, List<String> values) {
+		int from = 0;
+		int found;
+		while((found = event.indexOf(key, from)) >= 0) {
+			from = found + key.length();
+			int position = skipSpaces(event, from);
+			if(position == event.length() || event.charAt(position) != ':')
+				continue;	//The key is a value
+			position = skipSpaces(event, position + 1);
+			int end = position;
+			if(end < event.length() && event.charAt(end) == '"') {
+				end++;
+				while(end < event.length() && event.charAt(end) != '"')
+					end += event.charAt(end) == '\\' ? 2 : 1;
+				if(end < event.length())
+					values.add(event.substring(position, end + 1));
+			} else {
+				while(end < event.length() && VALUE_ENDS.indexOf(event.charAt(end)) < 0)
+					end++;
+				values.add(event.substring(position, end));
+			}
+		}
+	}
+
+	/** Encode a string in JSON.
+	 * @param string - String to encode.
+	 * @return String between quotes, with its quotes, backslashes and control characters escaped.
+	 */
+	static String quote(String string) {
+		StringBuilder builder = new StringBuilder(string.length() + 2).append('"');
+		for(int i=0;i<string.length();i++) {
+			char c = string.charAt(i);
+			if(c == '"' || c == '\\')
+				builder.append('\\').append(c);
+			else if(c < 0x20)
+				builder.append(String.format("\\u%04x", (int) c));
+			else
+				builder.append(c);
+		}
+		return builder.append('"').toString();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "EventFilter [excludeSelf=" + excludeSelf + ", authors=" + authors + ", excludedAuthors=" + excludedAuthors + ", prefix=" + prefix + ", fields=" + fields + "]";
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void compile() {
+		String[] keys = new String[fields.size()];
+		String[] values = new String[fields.size()];
+		String[] quotedValues = new String[fields.size()];
+		int i = 0;
+		for(Map.Entry<String, String> field:fields.entrySet()) {
+			keys[i] = quote(field.getKey());
+			values[i] = field.getValue();
+			quotedValues[i++] = quote(field.getValue());
+		}
+		this.values = values;
+		this.quotedValues = quotedValues;
+		this.keys = keys;
+	}
+
+	private static boolean hasField(String event, String key, String value, String quotedValue) {
+		int from = 0;
+		int found;
+		while((found = event.indexOf(key, from)) >= 0) {
+			from = found + key.length();
+			int position = skipSpaces(event, from);
+			if(position == event.length() || event.charAt(position) != ':')
+				continue;	//The key is a value
+			position = skipSpaces(event, position + 1);
+			if(event.startsWith(quotedValue, position))
+				return true;
+			if(event.startsWith(value, position)) {
+				int end = position + value.length();
+				if(end == event.length() || VALUE_ENDS.indexOf(event.charAt(end)) >= 0)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private static int skipSpaces(String event, int position) {
+		while(position < event.length() && Character.isWhitespace(event.charAt(position)))
+			position++;
+		return position;
+	}
+}
@@ -0,0 +1,96 @@
+package fr.eve.server;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.List;
+
+/** The {@code EventPage} class represent a page of events returned by the server.<br><br>
+ * A page is bounded by a number of events and a number of bytes. The cursor of the next page is given with the events.
+ * The events are serialized with an {@code EventCodec}, each one relative to the previous one, so a page costs a few bytes per event on top of the payloads.
+ */
+public class EventPage implements Serializable{
+
+	private static final long serialVersionUID = -2180622389180457114L;
+
+	/***************/
+	/** ATTRIBUTS **/
+	/***************/
+
+	private transient List<Event> events;
+	private int nextCursor;
+	private int end;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code EventPage} class.
+	 * @param events - Events of the page, in index order.
+	 * @param nextCursor - Index of the first event of the next page.
+	 * @param end - Number of events published on the server when the page was read.
+	 */
+	public EventPage(List<Event> events, int nextCursor, int end) {
+		this.events = events;
+		this.nextCursor = nextCursor;
+		this.end = end;
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the events.
+	 * @return Events of the page, in index order.
+	 */
+	public List<Event> getEvents() {
+		return events;
+	}
+
+	/** Get the cursor of the next page.
+	 * @return Index of the first event of the next page.
+	 */
+	public int getNextCursor() {
+		return nextCursor;
+	}
+
+	/** Get the number of events published on the server when the page was read.
+	 * @return Number of published events.
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	/** Check if the page reaches the last published event.
+	 * @return {@code true} if there was no more event to read after this page, {@code false} otherwise.
+	 */
+	public boolean isLast() {
+		return nextCursor >= end;
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void writeObject(ObjectOutputStream output) throws IOException {
+		output.defaultWriteObject();
+		EventCodec.writeEvents(events, output);
+	}
+
+	private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+		input.defaultReadObject();
+		events = EventCodec.readEvents(input);
+	}
+
+	/*************/
+	/** GETTERS **/
+	/*************/
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "EventPage [events=" + events.size() + ", nextCursor=" + nextCursor + ", end=" + end + "]";
+	}
+}
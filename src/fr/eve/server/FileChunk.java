@@ -0,0 +1,130 @@
+package fr.eve.server;
+
+import java.io.Serializable;
+import java.util.zip.CRC32;
+
+/** The {@code FileChunk} class represent a chunk of an initial file.<br><br>
+ * A chunk is characterized by the name of its file, its offset in the file and its data. The CRC32 checksum of the data is computed by the server
+ * so the client can check the chunk before writing it.
+ */
+public class FileChunk implements Serializable{
+
+	private static final long serialVersionUID = 4829120361475561072L;
+
+	/***************/
+	/** ATTRIBUTS **/
+	/***************/
+
+	private String fileName;
+	private long offset;
+	private long fileLength;
+	private byte[] data;
+	private long checksum;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code FileChunk} class.
+	 * @param fileName - Name of the file.
+	 * @param offset - Offset of the chunk in the file.
+	 * @param fileLength - Length of the whole file.
+	 * @param data - Data of the chunk.
+	 */
+	public FileChunk(String fileName, long offset, long fileLength, byte[] data) {
+		this(fileName, offset, fileLength, data, checksum(data));
+	}
+
+	/** Builder of the {@code FileChunk} class, for a chunk received with the checksum computed by the server.
+	 * @param fileName - Name of the file.
+	 * @param offset - Offset of the chunk in the file.
+	 * @param fileLength - Length of the whole file.
+	 * @param data - Data of the chunk.
+	 * @param checksum - CRC32 of the data computed by the server.
+	 */
+	public FileChunk(String fileName, long offset, long fileLength, byte[] data, long checksum) {
+		this.fileName = fileName;
+		this.offset = offset;
+		this.fileLength = fileLength;
+		this.data = data;
+		this.checksum = checksum;
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the file name.
+	 * @return Name of the file.
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/** Get the offset.
+	 * @return Offset of the chunk in the file.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/** Get the file length.
+	 * @return Length of the whole file.
+	 */
+	public long getFileLength() {
+		return fileLength;
+	}
+
+	/** Get the data.
+	 * @return Data of the chunk.
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	/** Get the checksum computed by the server.
+	 * @return CRC32 of the data.
+	 */
+	public long getChecksum() {
+		return checksum;
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Check the data against the checksum computed by the server.
+	 * @return {@code true} if the data has not been corrupted, {@code false} otherwise.
+	 */
+	public boolean isValid() {
+		return checksum(data) == checksum;
+	}
+
+	/** Check if this chunk is the last one of the file.
+	 * @return {@code true} if the chunk reaches the end of the file, {@code false} otherwise.
+	 */
+	public boolean isLast() {
+		return offset + data.length >= fileLength;
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private static long checksum(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		return crc.getValue();
+	}
+
+	/*************/
+	/** GETTERS **/
+	/*************/
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "FileChunk [fileName=" + fileName + ", offset=" + offset + ", length=" + data.length + ", fileLength=" + fileLength + "]";
+	}
+}
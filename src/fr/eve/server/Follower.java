@@ -0,0 +1,225 @@
+package fr.eve.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.rmi.AccessException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.server.ServerNotActiveException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import fr.eve.transport.Transport;
+import fr.eve.utils.LogLevel;
+import fr.eve.utils.Logger;
+import fr.eve.utils.Threads;
+
+/** The {@code Follower} class replicate the channels of a leader server on a follower server.<br><br>
+ * Each followed channel has its own thread tailing the log of the leader by index with the paged {@code getEvents},
+ * the events are published on the local channel with the indexes, authors and times given by the leader.
+ * The follower serves the reads and the subscriptions from its own channels and forwards the writes to the leader,
+ * so the events come back to the follower by replication. The leader only accepts them once the follower joined it with their shared secret.<br>
+ * The connection to the leader is opened on demand and opened again after a failure.
+ */
+class Follower {
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Maximum number of events copied in one call.
+	 */
+	static final int PAGE_SIZE = 1000;
+
+	/** Maximum size of the events copied in one call, in bytes.
+	 */
+	static final int PAGE_BYTES = 1024 * 1024;
+
+	/** Time to wait before contacting the leader again after a failure, in milliseconds.
+	 */
+	static final long RETRY_DELAY = 1000;
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private Transport transport;
+	private String ip;
+	private int port;
+	private String name;
+	private String secret;
+	private Logger logger;
+
+	private ServerInterface leader;
+	private List<Thread> threads;
+	private volatile boolean running;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code Follower} class.
+	 * @param transport - Transport used to contact the leader.
+	 * @param ip - Leader ip.
+	 * @param port - Leader port.
+	 * @param name - Leader name.
+	 * @param secret - Secret shared with the leader, {@code null} if the writes are not forwarded.
+	 * @param logger - Server logger.
+	 */
+	Follower(Transport transport, String ip, int port, String name, String secret, Logger logger) {
+		this.transport = transport;
+		this.ip = ip;
+		this.port = port;
+		this.name = name;
+		this.secret = secret;
+		this.logger = logger;
+		this.threads = new CopyOnWriteArrayList<Thread>();
+		this.running = true;
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the leader, contacting it if needed.
+	 * @return Leader server.
+	 * @throws RemoteException if the leader could not be contacted.
+	 */
+	synchronized ServerInterface getLeader() throws RemoteException {
+		if(leader == null) {
+			try {
+				ServerInterface server = transport.connect(ip, port, name);
+				join(server);
+				leader = server;
+				logger.log("Following " + name + " (" + ip + ":" + port + ").");
+			} catch (NotBoundException e) {
+				throw new RemoteException(name + " is not bound on " + ip + ":" + port, e);
+			}
+		}
+		return leader;
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Start copying the events of a channel from the leader.
+	 * @param channel - Local channel.
+	 */
+	void follow(final Channel channel) {
+		Thread thread = Threads.newThread("eve-follower-" + channel.getName(), true, new Runnable() {
+			public void run() {
+				tail(channel);
+			}
+		});
+		threads.add(thread);
+		thread.start();
+	}
+
+	/** Forward events to the leader.
+	 * @param channel - Name of the channel.
+	 * @param author - Ip of the client who sent the events to the follower.
+	 * @param events - Events to publish, in order.
+	 * @param sequence - Number of the batch for this client, {@code -1} if the batch is not numbered.
+	 * @return Index of the first event in the channel of the leader.
+	 * @throws RemoteException if the leader could not be contacted.
+	 * @throws InterruptedException if any thread interrupted the current thread.
+	 */
+	int forward(String channel, String author, List<String> events, int sequence) throws RemoteException, InterruptedException {
+		ServerInterface server = getLeader();
+		try {
+			return server.forwardEvents(channel, author, events, sequence);
+		} catch (ServerNotActiveException e) {
+			throw new RemoteException("Events could not be forwarded", e);
+		} catch (RemoteException e) {
+			reset(server);
+			throw e;
+		}
+	}
+
+	/** Stop copying the events and leave the leader.
+	 */
+	void close() {
+		running = false;
+		for(Thread thread:threads)
+			thread.interrupt();
+		ServerInterface server;
+		synchronized(this) {
+			server = leader;
+			leader = null;
+		}
+		if(server != null) {
+			try {
+				server.disconnect();
+			} catch (Exception e) {
+				//Already left
+			}
+			close(server);
+		}
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void tail(Channel channel) {
+		while(running) {
+			ServerInterface server = null;
+			try {
+				server = getLeader();
+				EventPage page = server.getEvents(channel.getName(), channel.getCursor(), PAGE_SIZE, PAGE_BYTES);
+				if(page.getEvents().isEmpty())
+					join(server);	//The leader stops waiting for the clients it does not know
+				channel.replicate(page.getEvents());
+			} catch (RemoteException | ServerNotActiveException e) {
+				if(!running)
+					return;
+				logger.log(LogLevel.WARN, "Channel " + channel.getName() + " could not be copied from " + name + " : " + e.getMessage());
+				reset(server);
+				try {
+					Thread.sleep(RETRY_DELAY);
+				} catch (InterruptedException interrupted) {
+					return;
+				}
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private void join(ServerInterface server) throws RemoteException {
+		try {
+			server.connect();
+		} catch (AlreadyConnectedException e) {
+			//Already joined
+		} catch (ServerNotActiveException e) {
+			throw new RemoteException(name + " could not be joined", e);
+		}
+		if(secret != null) {
+			try {
+				server.joinAsFollower(secret);
+			} catch (AccessException e) {	//The channels are still copied, only the writes are refused
+				logger.log(LogLevel.WARN, name + " refused this server as a follower : " + e.getMessage());
+			} catch (ServerNotActiveException e) {
+				throw new RemoteException(name + " could not be joined", e);
+			}
+		}
+	}
+
+	private synchronized void reset(ServerInterface server) {
+		if(server == null || server != leader)
+			return;
+		leader = null;
+		close(server);
+	}
+
+	private static void close(ServerInterface server) {
+		if(server instanceof Closeable) {
+			try {
+				((Closeable) server).close();
+			} catch (IOException e) {
+				//Already closed
+			}
+		}
+	}
+}
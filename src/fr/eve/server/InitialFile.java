@@ -0,0 +1,187 @@
+package fr.eve.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** The {@code InitialFile} class represent an entry of the initial files manifest.<br><br>
+ * An entry is characterized by the file name, its size, its modification date and the SHA-256 hash of its content.
+ * The hash of each block of {@code BLOCK_SIZE} bytes is also given, so a file which changed a little can be updated block by block.
+ */
+public class InitialFile implements Serializable{
+
+	private static final long serialVersionUID = -6319048427514006291L;
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Size of the hashed blocks, in bytes.
+	 */
+	public static final int BLOCK_SIZE = 1024 * 1024;
+
+	private static final String ALGORITHM = "SHA-256";
+
+	/***************/
+	/** ATTRIBUTS **/
+	/***************/
+
+	private String fileName;
+	private long size;
+	private long lastModified;
+	private byte[] hash;
+	private List<byte[]> blockHashes;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code InitialFile} class.
+	 * @param fileName - Name of the file.
+	 * @param size - Size of the file in bytes.
+	 * @param lastModified - Modification date of the file.
+	 * @param hash - SHA-256 hash of the content.
+	 * @param blockHashes - SHA-256 hash of each block of {@code BLOCK_SIZE} bytes.
+	 */
+	public InitialFile(String fileName, long size, long lastModified, byte[] hash, List<byte[]> blockHashes) {
+		this.fileName = fileName;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.hash = hash;
+		this.blockHashes = blockHashes;
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the file name.
+	 * @return Name of the file.
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/** Get the size.
+	 * @return Size of the file in bytes.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/** Get the modification date.
+	 * @return Modification date of the file, as returned by {@code File.lastModified}.
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/** Get the hash of the content.
+	 * @return SHA-256 hash of the content.
+	 */
+	public byte[] getHash() {
+		return hash;
+	}
+
+	/** Get the hash of each block.
+	 * @return SHA-256 hash of each block of {@code BLOCK_SIZE} bytes.
+	 */
+	public List<byte[]> getBlockHashes() {
+		return blockHashes;
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Hash a file.
+	 * @param fileName - Name given to the file in the manifest.
+	 * @param file - File to hash.
+	 * @return Manifest entry of the file.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static InitialFile hash(String fileName, File file) throws IOException {
+		MessageDigest digest = getDigest();
+		MessageDigest blockDigest = getDigest();
+		List<byte[]> blockHashes = new ArrayList<byte[]>();
+		long lastModified = file.lastModified();
+		long size = 0;
+
+		byte[] buffer = new byte[64 * 1024];
+		InputStream input = new FileInputStream(file);
+		try {
+			int blockLength = 0, read;
+			while((read = input.read(buffer, 0, Math.min(buffer.length, BLOCK_SIZE - blockLength))) != -1) {
+				digest.update(buffer, 0, read);
+				blockDigest.update(buffer, 0, read);
+				blockLength += read;
+				size += read;
+				if(blockLength == BLOCK_SIZE) {
+					blockHashes.add(blockDigest.digest());
+					blockLength = 0;
+				}
+			}
+			if(blockLength != 0)
+				blockHashes.add(blockDigest.digest());
+		} finally {
+			input.close();
+		}
+		return new InitialFile(fileName, size, lastModified, digest.digest(), blockHashes);
+	}
+
+	/** Check if this entry describes the current state of a file, without reading its content.
+	 * @param file - File to check.
+	 * @return {@code true} if the file has the same size and modification date, {@code false} otherwise.
+	 */
+	public boolean isUpToDate(File file) {
+		return file.isFile() && file.length() == size && file.lastModified() == lastModified;
+	}
+
+	/** Check if two entries have the same content.
+	 * @param initialFile - Entry to compare.
+	 * @return {@code true} if the hashes are equal, {@code false} otherwise.
+	 */
+	public boolean hasSameContent(InitialFile initialFile) {
+		return initialFile != null && size == initialFile.size && Arrays.equals(hash, initialFile.hash);
+	}
+
+	/** Check if a block has the same content in two entries.
+	 * @param initialFile - Entry to compare.
+	 * @param block - Index of the block.
+	 * @return {@code true} if the block hashes are equal, {@code false} otherwise.
+	 */
+	public boolean hasSameBlock(InitialFile initialFile, int block) {
+		return block < blockHashes.size() && block < initialFile.blockHashes.size()
+				&& Arrays.equals(blockHashes.get(block), initialFile.blockHashes.get(block));
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private static MessageDigest getDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(ALGORITHM + " is not available", e);
+		}
+	}
+
+	/*************/
+	/** GETTERS **/
+	/*************/
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "InitialFile [fileName=" + fileName + ", size=" + size + ", blocks=" + blockHashes.size() + "]";
+	}
+}
@@ -0,0 +1,176 @@
+package fr.eve.server;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import fr.eve.dao.StateDAO;
+import fr.eve.utils.LogLevel;
+import fr.eve.utils.Logger;
+import fr.eve.utils.Threads;
+
+/** The {@code Materializer} class fold the events of a channel into a state with a {@code Reducer}.<br><br>
+ * A thread tails the channel like a reader, so the publishers never wait for the reducer.
+ * Every {@code checkpointEvents} events the state is encoded and saved with the index it covers, this snapshot is the one sent to the clients.
+ * On startup the saved state is decoded and only the events published after it are folded again.
+ * @param <S> - Type of the state.
+ */
+class Materializer<S> {
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Maximum number of events read from the channel in one call.
+	 */
+	static final int PAGE_SIZE = 1000;
+
+	/** Time to wait before reading the channel again after a failure, in milliseconds.
+	 */
+	static final long RETRY_DELAY = 1000;
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private Channel channel;
+	private Reducer<S> reducer;
+	private StateDAO stateDAO;
+	private int checkpointEvents;
+	private Logger logger;
+
+	private S state;
+	private int applied;
+	private volatile StateSnapshot snapshot;
+	private Thread thread;
+	private volatile boolean running;
+	private volatile boolean failed;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code Materializer} class.<br>
+	 * The saved state is loaded, it is ignored if it could not be decoded or if it is ahead of the channel.
+	 * @param channel - Channel whose events are folded.
+	 * @param reducer - Reducer of the events.
+	 * @param stateDAO - State file.
+	 * @param checkpointEvents - Number of events folded between two checkpoints.
+	 * @param logger - Server logger.
+	 * @throws IOException if the state file could not be read.
+	 */
+	Materializer(Channel channel, Reducer<S> reducer, StateDAO stateDAO, int checkpointEvents, Logger logger) throws IOException {
+		this.channel = channel;
+		this.reducer = reducer;
+		this.stateDAO = stateDAO;
+		this.checkpointEvents = checkpointEvents;
+		this.logger = logger;
+
+		StateSnapshot saved = stateDAO.find();
+		if(saved != null && saved.getIndex() <= channel.getCursor()) {
+			try {
+				state = reducer.decode(saved.getData());
+				applied = saved.getIndex();
+				snapshot = saved;
+			} catch (IOException e) {
+				logger.log(LogLevel.WARN, "State of " + channel.getName() + " could not be decoded, the events are folded again : " + e.getMessage());
+			}
+		}
+		if(snapshot == null)
+			state = reducer.create();
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the last checkpointed state.
+	 * @return State snapshot, {@code null} if no checkpoint was made yet.
+	 */
+	StateSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Start folding the events.
+	 */
+	void start() {
+		running = true;
+		thread = Threads.newThread("eve-reducer-" + channel.getName(), true, new Runnable() {
+			public void run() {
+				tail();
+			}
+		});
+		thread.start();
+	}
+
+	/** Stop folding the events and checkpoint the state.
+	 */
+	void close() {
+		running = false;
+		if(thread != null) {
+			thread.interrupt();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		if(!failed && (snapshot == null ? applied != 0 : applied != snapshot.getIndex()))
+			checkpoint();
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void tail() {
+		BooleanSupplier cancelled = new BooleanSupplier() {
+			public boolean getAsBoolean() {
+				return !running;
+			}
+		};
+		while(running) {
+			try {
+				channel.await(null, applied, cancelled);
+				if(!running)
+					return;
+				List<Event> events = channel.read(applied, PAGE_SIZE);
+				for(Event event:events) {
+					state = reducer.reduce(state, event);
+					applied = event.getIndex() + 1;
+					if(applied - (snapshot == null ? 0 : snapshot.getIndex()) >= checkpointEvents)
+						checkpoint();
+				}
+			} catch (RemoteException e) {
+				logger.log(LogLevel.WARN, "Events of " + channel.getName() + " could not be folded : " + e.getMessage());
+				try {
+					Thread.sleep(RETRY_DELAY);
+				} catch (InterruptedException interrupted) {
+					return;
+				}
+			} catch (InterruptedException e) {
+				return;
+			} catch (RuntimeException e) {
+				running = false;
+				failed = true;	//The state may have been modified by the failed event
+				logger.log(LogLevel.ERROR, "Event " + applied + " of " + channel.getName() + " could not be folded, the state is not updated anymore : " + e);
+			}
+		}
+	}
+
+	private void checkpoint() {
+		try {
+			StateSnapshot checkpoint = new StateSnapshot(applied, reducer.encode(state));
+			stateDAO.update(checkpoint);
+			snapshot = checkpoint;
+		} catch (IOException e) {
+			logger.log(LogLevel.WARN, "State of " + channel.getName() + " could not be saved : " + e.getMessage());
+		}
+	}
+}
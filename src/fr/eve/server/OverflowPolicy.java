@@ -0,0 +1,19 @@
+package fr.eve.server;
+
+/** The {@code OverflowPolicy} enum list what the server does when the queue of a subscriber is full.<br><br>
+ * The publisher is never blocked by a subscriber, whatever the policy.
+ */
+public enum OverflowPolicy {
+
+	/** The subscriber is paused: the new events are not queued anymore, they are read again from the log once the queue is drained. No event is lost.
+	 */
+	BLOCK,
+
+	/** The oldest queued event is dropped to queue the new one. The subscriber misses the dropped events.
+	 */
+	DROP_OLDEST,
+
+	/** The subscriber is disconnected.
+	 */
+	DISCONNECT
+}
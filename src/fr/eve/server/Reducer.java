@@ -0,0 +1,37 @@
+package fr.eve.server;
+
+import java.io.IOException;
+
+/** The {@code Reducer} interface is used to fold the events of a channel into a materialized state on the server.<br><br>
+ * The events are given once each, in index order, by a single thread, so the state does not need to be thread safe.
+ * The state is encoded at each checkpoint, the clients download the last encoded state instead of replaying the whole history.
+ * @param <S> - Type of the state.
+ */
+public interface Reducer<S> {
+
+	/** Create the state of an empty channel.
+	 * @return Initial state.
+	 */
+	public S create();
+
+	/** Fold an event into the state.
+	 * @param state - Current state, which may be modified.
+	 * @param event - Next event of the channel.
+	 * @return New state.
+	 */
+	public S reduce(S state, Event event);
+
+	/** Encode the state, to save it and to send it to the clients.
+	 * @param state - Current state.
+	 * @return Encoded state.
+	 * @throws IOException if the state could not be encoded.
+	 */
+	public byte[] encode(S state) throws IOException;
+
+	/** Decode a state saved by {@code encode}.
+	 * @param data - Encoded state.
+	 * @return Decoded state.
+	 * @throws IOException if the state could not be decoded.
+	 */
+	public S decode(byte[] data) throws IOException;
+}
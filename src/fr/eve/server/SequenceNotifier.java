@@ -0,0 +1,244 @@
+package fr.eve.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/** The {@code SequenceNotifier} class is used to wake up the readers waiting for new events.<br><br>
+ * The writer publishes the number of events and only takes the lock if a reader is waiting, so a publish costs O(1) whatever the number of connected users.
+ * A reader waits until the published sequence passes its cursor. The sequence is checked under the lock after the reader is registered, so no wakeup can be lost.<br>
+ * A reader which must not hold a thread registers a listener instead, the listener is run once after the sequence passes its cursor or its client disconnects.
+ * The listeners are run by a task of an executor, not by the publisher which holds the write lock of its channel: a publish only schedules this task,
+ * and the publishes made while it runs are coalesced in its next pass.<br>
+ * The waiters and the listeners are registered by host, so {@code cancel} only wakes up the readers of the disconnected client.
+ */
+class SequenceNotifier implements Runnable {
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private volatile int sequence;
+	private AtomicInteger waiters;
+	private ReentrantLock lock;
+	private Map<String, Set<Condition>> waiting;
+	private Set<Listener> listeners;
+	private Map<String, Set<Listener>> listening;
+	private Executor executor;
+	private AtomicBoolean scheduled;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code SequenceNotifier} class.
+	 * @param sequence - Number of events already published.
+	 * @param executor - Executor running the listeners.
+	 */
+	SequenceNotifier(int sequence, Executor executor) {
+		this.sequence = sequence;
+		this.waiters = new AtomicInteger();
+		this.lock = new ReentrantLock();
+		this.waiting = new HashMap<String, Set<Condition>>();
+		this.listeners = ConcurrentHashMap.newKeySet();
+		this.listening = new HashMap<String, Set<Listener>>();
+		this.executor = executor;
+		this.scheduled = new AtomicBoolean();
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the published sequence.
+	 * @return Number of published events.
+	 */
+	int getSequence() {
+		return sequence;
+	}
+
+	/** Get the number of waiting readers.
+	 * @return Number of waiting readers.
+	 */
+	int getWaiters() {
+		return waiters.get() + listeners.size();
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Publish a new sequence and wake up the waiting readers.
+	 * @param sequence - Number of published events.
+	 */
+	void publish(int sequence) {
+		this.sequence = sequence;
+		if(waiters.get() != 0) {
+			lock.lock();
+			try {
+				for(Set<Condition> conditions:waiting.values())
+					for(Condition condition:conditions)
+						condition.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+		if(!listeners.isEmpty())
+			schedule();
+	}
+
+	/** Wake up the waiting readers of a client so they check their cancel condition, and run its listeners, whatever their cursor.<br>
+	 * The listeners are run by the calling thread. The readers of the other clients are not woken up.
+	 * @param host - Client host.
+	 */
+	void cancel(String host) {
+		Set<Listener> cancelled;
+		lock.lock();
+		try {
+			Set<Condition> conditions = waiting.get(host);
+			if(conditions != null) {
+				for(Condition condition:conditions)
+					condition.signal();
+			}
+			cancelled = listening.remove(host);
+		} finally {
+			lock.unlock();
+		}
+		if(cancelled == null)
+			return;
+		for(Listener listener:cancelled)
+			if(listeners.remove(listener))
+				listener.run();
+	}
+
+	/** Run a task once an event is published at the cursor, without waiting for it.<br>
+	 * The task is run by the executor of the notifier, or by the calling thread if the event is already published, so it should only hand the work over to another thread.
+	 * It is also run by {@code cancel}, so it should check again the cursor and its cancel condition.
+	 * @param host - Client host.
+	 * @param cursor - Index of the awaited event.
+	 * @param task - Task to run.
+	 */
+	void listen(String host, int cursor, Runnable task) {
+		Listener listener = new Listener(host, cursor, task);
+		lock.lock();
+		try {
+			register(listening, host, listener);
+		} finally {
+			lock.unlock();
+		}
+		listeners.add(listener);
+		if(sequence > cursor && listeners.remove(listener)) {	//Published before the listener was registered
+			unregister(Collections.singletonList(listener));
+			listener.run();
+		}
+	}
+
+	/** Wait until an event is published at the cursor.
+	 * @param host - Client host, {@code null} for a reader of the server itself.
+	 * @param cursor - Index of the awaited event.
+	 * @param cancelled - Condition checked on each wakeup, the wait stops when it is {@code true}.
+	 * @throws InterruptedException if any thread interrupted the current thread.
+	 */
+	void await(String host, int cursor, BooleanSupplier cancelled) throws InterruptedException {
+		if(sequence > cursor)
+			return;
+		lock.lock();
+		Condition condition = lock.newCondition();
+		register(waiting, host, condition);
+		waiters.incrementAndGet();
+		try {
+			while(sequence <= cursor && !cancelled.getAsBoolean())
+				condition.await();
+		} finally {
+			waiters.decrementAndGet();
+			unregister(waiting, host, condition);
+			lock.unlock();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		scheduled.set(false);	//A publish from now on schedules a new pass, the sequence is read after
+		List<Listener> fired = new ArrayList<Listener>();
+		for(Object object:listeners.toArray()) {	//Listeners registered again while firing wait for the next sequence
+			Listener listener = (Listener) object;
+			if(sequence > listener.cursor && listeners.remove(listener))
+				fired.add(listener);
+		}
+		if(fired.isEmpty())
+			return;
+		unregister(fired);
+		for(Listener listener:fired)
+			listener.run();
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void schedule() {
+		if(!scheduled.compareAndSet(false, true))
+			return;
+		try {
+			executor.execute(this);
+		} catch (RejectedExecutionException e) {	//Server closed, the listeners only check their cancel condition
+			run();
+		}
+	}
+
+	private void unregister(List<Listener> fired) {
+		lock.lock();
+		try {
+			for(Listener listener:fired)
+				unregister(listening, listener.host, listener);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static <T> void register(Map<String, Set<T>> map, String host, T value) {
+		Set<T> set = map.get(host);
+		if(set == null)
+			map.put(host, set = new HashSet<T>());
+		set.add(value);
+	}
+
+	private static <T> void unregister(Map<String, Set<T>> map, String host, T value) {
+		Set<T> set = map.get(host);
+		if(set != null && set.remove(value) && set.isEmpty())
+			map.remove(host);
+	}
+
+	/** Task waiting for an event to be published at a cursor.
+	 */
+	private static class Listener {
+
+		private String host;
+		private int cursor;
+		private Runnable task;
+
+		private Listener(String host, int cursor, Runnable task) {
+			this.host = host;
+			this.cursor = cursor;
+			this.task = task;
+		}
+
+		private void run() {
+			task.run();
+		}
+	}
+}
@@ -1,25 +1,62 @@
 package fr.eve.server;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.rmi.AccessException;
+import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.server.ServerNotActiveException;
-import java.time.LocalDateTime;
+import java.rmi.server.UnicastRemoteObject;
+import java.security.MessageDigest;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Pattern;
 
+import fr.eve.client.ClientInterface;
+import fr.eve.dao.EventLogDAO;
 import fr.eve.dao.EventsDAO;
+import fr.eve.dao.StateDAO;
+import fr.eve.dao.SyncPolicy;
 import fr.eve.example.Example;
 import fr.eve.rmi.RMIServer;
+import fr.eve.transport.Awaitable;
+import fr.eve.transport.Caller;
+import fr.eve.transport.TcpServer;
+import fr.eve.transport.Transport;
+import fr.eve.utils.LogLevel;
+import fr.eve.utils.Threads;
 
 /** The {@code Server} class is used to manage Eve servers.<br><br>
- * This class extends {@code RMIServer} class.
+ * This class extends {@code RMIServer} class. The server can also be opened on a TCP port with {@code openTcp}, for the clients using {@code Transport.TCP}.<br>
+ * The events are published on named channels, each one with its own log and its own lock. The methods without a channel use {@code DEFAULT_CHANNEL}.<br>
+ * A server started with {@code follow} is a follower: it copies the channels of a leader, serves the reads and the subscriptions locally
+ * and forwards the writes to the leader. Several followers spread the readers of a leader over several processes.<br>
+ * A client calls the server through a session opened by {@code openSession}: the users, the subscriptions and the authors of the events are keyed by the session id,
+ * so several clients of the same host each have their own identity. The calls made without a session are identified by the client ip.<br>
+ * Each channel keeps only its recent events in memory, bounded by {@code setHotWindow}, the older ones are paged from its log through a cache bounded by {@code setPageCacheSize}.<br>
+ * A channel given a {@code Reducer} with {@code setReducer} folds its events into a state, the new clients download it with {@code getState}
+ * and only read the events published after it.<br>
+ * The activity of the server is recorded by its {@code ServerMetrics}, registered in the platform MBean server when the server is opened.
  */
-public class Server extends RMIServer implements ServerInterface {
+public class Server extends RMIServer implements ServerInterface, Awaitable {
 	
 	public static void main(String args[]) {
 		try {	
@@ -33,12 +70,39 @@ public class Server extends RMIServer implements ServerInterface {
 				String name = properties.getProperty("name");
 				String initialFileName = properties.getProperty("initialFileName");
 				String eventFileName = properties.getProperty("eventFileName");
+				SyncPolicy syncPolicy = SyncPolicy.valueOf(properties.getProperty("syncPolicy", SyncPolicy.GROUP.name()));
+				long syncInterval = Long.parseLong(properties.getProperty("syncInterval", "100"));
+				long segmentSize = Long.parseLong(properties.getProperty("segmentSize", String.valueOf(EventLogDAO.DEFAULT_SEGMENT_SIZE)));
+				String tcpPort = properties.getProperty("tcpPort");
+				int tcpThreads = Integer.parseInt(properties.getProperty("tcpThreads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+				OverflowPolicy overflowPolicy = OverflowPolicy.valueOf(properties.getProperty("overflowPolicy", OverflowPolicy.BLOCK.name()));
+				int pushQueueSize = Integer.parseInt(properties.getProperty("pushQueueSize", String.valueOf(PUSH_QUEUE_SIZE)));
+				String leaderIp = properties.getProperty("leaderIp");
+				String leaderPort = properties.getProperty("leaderPort");
+				String leaderName = properties.getProperty("leaderName", name);
+				Transport leaderTransport = Transport.valueOf(properties.getProperty("leaderTransport", Transport.RMI.name()));
+				int hotEvents = Integer.parseInt(properties.getProperty("hotEvents", String.valueOf(BUFFER_SIZE)));
+				long hotBytes = Long.parseLong(properties.getProperty("hotBytes", String.valueOf(HOT_BYTES)));
+				long pageCacheSize = Long.parseLong(properties.getProperty("pageCacheSize", String.valueOf(EventLogDAO.DEFAULT_CACHE_SIZE)));
+				LogLevel logLevel = LogLevel.valueOf(properties.getProperty("logLevel", LogLevel.INFO.name()));
+				String followerSecret = properties.getProperty("followerSecret");
 
 				if(ip != null)
 					System.setProperty("java.rmi.server.hostname", ip);
+				Threads.setVirtual(Boolean.parseBoolean(properties.getProperty("virtualThreads", String.valueOf(Threads.isVirtual()))));
 				
-				Server server = new Server(port, name, initialFileName, eventFileName);
+				Server server = new Server(port, name, initialFileName, eventFileName, syncPolicy, syncInterval, segmentSize);
+				server.getLogger().setLevel(logLevel);
+				server.setOverflowPolicy(overflowPolicy);
+				server.setPushQueueSize(pushQueueSize);
+				server.setHotWindow(hotEvents, hotBytes);
+				server.setPageCacheSize(pageCacheSize);
+				server.setFollowerSecret(followerSecret);
 				server.open();
+				if(tcpPort != null)
+					server.openTcp(Integer.parseInt(tcpPort), tcpThreads);
+				if(leaderIp != null)
+					server.follow(leaderTransport, leaderIp, Integer.parseInt(leaderPort), leaderName);
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -46,22 +110,93 @@ public class Server extends RMIServer implements ServerInterface {
 	}
 	
 	private static final long serialVersionUID = -7054118432747739424L;
+
+	/** Number of recent events kept in memory to serve the readers without reading the log.
+	 */
+	public static final int BUFFER_SIZE = 1 << 16;
+
+	/** Default maximum size of the recent events kept in memory by each channel, in bytes.
+	 */
+	public static final long HOT_BYTES = 64 * 1024 * 1024;
+
+	/** Default number of events folded into the state of a channel between two checkpoints.
+	 */
+	public static final int STATE_CHECKPOINT_EVENTS = 10000;
+
+	/** Maximum length of a chunk of an initial file.
+	 */
+	public static final int MAX_CHUNK_SIZE = 1024 * 1024;
+
+	/** Maximum number of events returned by a call to the deprecated {@code getEvents(Event)}, a client calls it again from the last returned event to get the next ones.
+	 */
+	public static final int LEGACY_PAGE_SIZE = 1000;
+
+	/** Maximum size of the events returned by a call to the deprecated {@code getEvents(Event)}, in bytes.
+	 */
+	public static final int LEGACY_PAGE_BYTES = 1024 * 1024;
+
+	/** Default number of events queued for each subscriber.
+	 */
+	public static final int PUSH_QUEUE_SIZE = 1024;
+
+	/** Maximum number of events pushed to a subscriber in one call.
+	 */
+	public static final int PUSH_BATCH_SIZE = 256;
+
+	/** Number of platform threads pushing the events when the virtual threads are not used.
+	 * A subscriber holds one of them during its calls, the other subscribers wait in the queue of the pool.
+	 */
+	public static final int PUSH_THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+
+	/** Maximum time a batch waits for the previous batch of the same client, in milliseconds.
+	 */
+	public static final long SEQUENCE_TIMEOUT = 10000;
+
+	/** Name of the channel used by the methods without a channel.
+	 */
+	public static final String DEFAULT_CHANNEL = "main";
+
+	/** Maximum number of channels.
+	 */
+	public static final int MAX_CHANNELS = 1024;
+
+	private static final Pattern CHANNEL_NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
 	
 	/***************/
 	/** ATTRIBUTS **/
 	/***************/
 
 	private List<String> initialFiles;
+	private ConcurrentHashMap<String, InitialFile> manifest;
 	private String eventFileName;
+	private SyncPolicy syncPolicy;
+	private long syncInterval;
+	private long segmentSize;
+	private int hotEvents;
+	private long hotBytes;
+	private long pageCacheSize;
+	private Map<String, Channel> channels;
+	private TcpServer tcpServer;
+	private Follower follower;
+	private ExecutorService pushExecutor;
+	private ExecutorService notifyExecutor;
+	private ScheduledExecutorService timer;
+	private OverflowPolicy overflowPolicy;
+	private int pushQueueSize;
+	private ServerMetrics metrics;
+	private AtomicLong nextSession;
+	private Map<String, ServerInterface> sessions;
+	private volatile String followerSecret;
+	private Set<String> followers;
 	
-	private HashMap<String, String> users;
-	private List<Event> events;
+	private Set<String> users;
 	
 	/*************/
 	/** BUILDER **/
 	/*************/
 
-	/** Builder of the {@code Server} class.
+	/** Builder of the {@code Server} class.<br>
+	 * The events are forced on the disk by group commit every 100 milliseconds.
 	 * @param name - Server name.
 	 * @param port - Server port.
 	 * @param initialFileName - The initial file that all the clients should use, {@code null} if there is no initial file.
@@ -70,12 +205,58 @@ public class Server extends RMIServer implements ServerInterface {
 	 * @throws ClassNotFoundException if class of a serialized object cannot be found.
 	 */
 	public Server(int port, String name, String initialFileName, String eventFileName) throws ClassNotFoundException, IOException {
+		this(port, name, initialFileName, eventFileName, SyncPolicy.GROUP, 100, EventLogDAO.DEFAULT_SEGMENT_SIZE);
+	}
+
+	/** Builder of the {@code Server} class.<br>
+	 * The events of the default channel are stored in the {@code eventFileName.log} directory, the events of another channel in {@code eventFileName.channel.log}.
+	 * An event file written by a previous version is imported in the log of the default channel the first time.
+	 * @param name - Server name.
+	 * @param port - Server port.
+	 * @param initialFileName - The initial file that all the clients should use, {@code null} if there is no initial file.
+	 * @param eventFileName - The event file in which store all the events.
+	 * @param syncPolicy - When the events are forced on the disk.
+	 * @param syncInterval - Interval between two group commits in milliseconds, only used by {@code SyncPolicy.GROUP}.
+	 * @param segmentSize - Maximum size of a log segment in bytes.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws ClassNotFoundException if class of a serialized object cannot be found.
+	 */
+	public Server(int port, String name, String initialFileName, String eventFileName, SyncPolicy syncPolicy, long syncInterval, long segmentSize) throws ClassNotFoundException, IOException {
 		super(port, name);
 		this.eventFileName = eventFileName;
 		this.initialFiles = new ArrayList<String>();
+		this.manifest = new ConcurrentHashMap<String, InitialFile>();
 		
-		users = new HashMap<String, String>();
-		events = new EventsDAO(eventFileName).find();
+		users = ConcurrentHashMap.newKeySet();
+		followers = ConcurrentHashMap.newKeySet();
+		this.syncPolicy = syncPolicy;
+		this.syncInterval = syncInterval;
+		this.segmentSize = segmentSize;
+		this.hotEvents = BUFFER_SIZE;
+		this.hotBytes = HOT_BYTES;
+		this.pageCacheSize = EventLogDAO.DEFAULT_CACHE_SIZE;
+		channels = new ConcurrentHashMap<String, Channel>();
+		metrics = new ServerMetrics(channels);
+		nextSession = new AtomicLong(System.currentTimeMillis());
+		sessions = new ConcurrentHashMap<String, ServerInterface>();
+		overflowPolicy = OverflowPolicy.BLOCK;
+		pushQueueSize = PUSH_QUEUE_SIZE;
+		pushExecutor = Threads.newExecutor("eve-push", PUSH_THREADS);
+		notifyExecutor = Threads.newExecutor("eve-notify", 1);
+		timer = Executors.newSingleThreadScheduledExecutor(Threads.newFactory("eve-timer", true));
+
+		long start = System.currentTimeMillis();
+		EventLogDAO eventLog = new EventLogDAO(eventFileName + ".log", syncPolicy, syncInterval, segmentSize);
+		eventLog.open();
+		getLogger().log("Events loaded in " + (System.currentTimeMillis() - start) + " ms (" + eventLog.getNextIndex() + " events, " + eventLog.getReplayedCount() + " replayed after the snapshot).");
+		if(eventLog.getNextIndex() == 0 && new File(eventFileName).isFile()) {
+			start = System.currentTimeMillis();
+			for(Event event:new EventsDAO(eventFileName).find())
+				eventLog.append(event);
+			eventLog.snapshot();
+			getLogger().log("Event file imported in " + (System.currentTimeMillis() - start) + " ms (" + eventLog.getNextIndex() + " events).");
+		}
+		channels.put(DEFAULT_CHANNEL, new Channel(DEFAULT_CHANNEL, eventLog, hotEvents, hotBytes, getLogger(), metrics, notifyExecutor, timer));
 
 		if(!initialFileName.isEmpty()) {
 			File initialFile = new File(initialFileName);
@@ -89,10 +270,225 @@ public class Server extends RMIServer implements ServerInterface {
 		}
 	}
 
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Set what the server does when the queue of a subscriber is full, for the next subscriptions.
+	 * @param overflowPolicy - Overflow policy, {@code OverflowPolicy.BLOCK} by default.
+	 */
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/** Set the number of events queued for each subscriber, for the next subscriptions.
+	 * @param pushQueueSize - Queue size, {@code PUSH_QUEUE_SIZE} by default.
+	 */
+	public void setPushQueueSize(int pushQueueSize) {
+		this.pushQueueSize = pushQueueSize;
+	}
+
+	/** Set the recent events kept in memory by each channel, the older events are read from the log.
+	 * @param hotEvents - Number of recent events, {@code BUFFER_SIZE} by default.
+	 * @param hotBytes - Maximum size of the recent events in bytes, {@code HOT_BYTES} by default. The last event is always kept.
+	 * @throws IOException if the log of a channel could not be read.
+	 */
+	public void setHotWindow(int hotEvents, long hotBytes) throws IOException {
+		synchronized(channels) {
+			this.hotEvents = hotEvents;
+			this.hotBytes = hotBytes;
+			for(Channel channel:channels.values())
+				channel.setHotWindow(hotEvents, hotBytes);
+		}
+	}
+
+	/** Set the secret shared by a leader and its followers.<br>
+	 * A leader only accepts the events forwarded by the clients which gave this secret to {@code joinAsFollower}, so no other client can choose the author of an event.
+	 * A follower gives it to its leader when it joins it.
+	 * @param followerSecret - Shared secret, {@code null} or empty by default to refuse all the forwarded events.
+	 */
+	public void setFollowerSecret(String followerSecret) {
+		this.followerSecret = followerSecret;
+	}
+
+	/** Set the size of the cache of the events paged from the log of each channel.
+	 * @param pageCacheSize - Maximum size of the cached events in bytes, {@code EventLogDAO.DEFAULT_CACHE_SIZE} by default, {@code 0} to disable the cache.
+	 */
+	public void setPageCacheSize(long pageCacheSize) {
+		synchronized(channels) {
+			this.pageCacheSize = pageCacheSize;
+			for(Channel channel:channels.values())
+				channel.getEventLog().setCacheSize(pageCacheSize);
+		}
+	}
+
+	/** Fold the events of a channel into a state, checkpointed every {@code STATE_CHECKPOINT_EVENTS} events.
+	 * @param channel - Name of the channel, {@code null} for the default channel.
+	 * @param reducer - Reducer of the events.
+	 * @throws IOException if the channel could not be opened or if its state file could not be read.
+	 */
+	public <S> void setReducer(String channel, Reducer<S> reducer) throws IOException {
+		setReducer(channel, reducer, STATE_CHECKPOINT_EVENTS);
+	}
+
+	/** Fold the events of a channel into a state.<br>
+	 * The state is saved in {@code eventFileName.state} for the default channel, in {@code eventFileName.channel.state} for another channel.
+	 * On startup the saved state is loaded and only the events published after it are folded again.
+	 * @param channel - Name of the channel, {@code null} for the default channel.
+	 * @param reducer - Reducer of the events.
+	 * @param checkpointEvents - Number of events folded between two checkpoints.
+	 * @throws IOException if the channel could not be opened or if its state file could not be read.
+	 */
+	public <S> void setReducer(String channel, Reducer<S> reducer, int checkpointEvents) throws IOException {
+		Channel events = getChannel(channel);
+		String stateFileName = eventFileName + (events.getName().equals(DEFAULT_CHANNEL) ? "" : "." + events.getName()) + ".state";
+		events.setReducer(reducer, new StateDAO(stateFileName), checkpointEvents);
+	}
+
+	/** Get the server metrics.
+	 * @return Metrics of the server.
+	 */
+	public ServerMetrics getMetrics() {
+		return metrics;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.rmi.RMIServer#getMBean()
+	 */
+	@Override
+	protected Object getMBean() {
+		return metrics;
+	}
+
 	/*********************/
 	/** PRIVATE METHODS **/
 	/*********************/
-	
+
+	/** Get a channel, it is created the first time.
+	 * @param name - Name of the channel, {@code null} for the default channel.
+	 * @return Channel.
+	 * @throws RemoteException if the name is not valid, if there are too many channels or if the log could not be opened.
+	 */
+	Channel getChannel(String name) throws RemoteException {
+		if(name == null)
+			name = DEFAULT_CHANNEL;
+		Channel channel = channels.get(name);
+		if(channel != null)
+			return channel;
+		if(!CHANNEL_NAME.matcher(name).matches())
+			throw new RemoteException("Invalid channel name " + name);
+		synchronized(channels) {
+			channel = channels.get(name);
+			if(channel == null) {
+				if(channels.size() >= MAX_CHANNELS)
+					throw new RemoteException("Too many channels");
+				try {
+					EventLogDAO eventLog = new EventLogDAO(eventFileName + "." + name + ".log", syncPolicy, syncInterval, segmentSize);
+					eventLog.open();
+					eventLog.setCacheSize(pageCacheSize);
+					channel = new Channel(name, eventLog, hotEvents, hotBytes, getLogger(), metrics, notifyExecutor, timer);
+				} catch (IOException e) {
+					throw new RemoteException("Channel " + name + " could not be opened", e);
+				}
+				channels.put(name, channel);
+				getLogger().log("Channel " + name + " opened (" + channel.getCursor() + " events).");
+				if(follower != null)
+					follower.follow(channel);
+			}
+			return channel;
+		}
+	}
+
+	/** Call a method of the server as a client.
+	 * @param host - Client host or session id.
+	 * @param method - Method of {@code ServerInterface}.
+	 * @param args - Arguments of the call.
+	 * @return Result of the call.
+	 * @throws InvocationTargetException if the method threw an exception.
+	 * @throws IllegalAccessException if the method could not be called.
+	 */
+	Object call(String host, Method method, Object[] args) throws InvocationTargetException, IllegalAccessException {
+		setClientHost(host);
+		try {
+			return method.invoke(this, args);
+		} finally {
+			setClientHost(null);
+		}
+	}
+
+	/** Forget a session, expire its cursors and unexport it.
+	 * @param id - Session id.
+	 * @param disconnect - {@code true} to disconnect the client of the session if it is still connected.
+	 */
+	void closeSession(String id, boolean disconnect) {
+		ServerInterface session = sessions.remove(id);
+		if(disconnect && users.contains(id)) {
+			setClientHost(id);
+			try {
+				disconnect();
+			} catch (RemoteException | ServerNotActiveException | AlreadyDisconnectedException e) {
+				//Already disconnected
+			} finally {
+				setClientHost(null);
+			}
+		}
+		expire(id);
+		if(session != null) {
+			try {
+				UnicastRemoteObject.unexportObject(session, true);
+			} catch (RemoteException e) {
+				//Already unexported
+			}
+		}
+	}
+
+	private void expire(String host) {
+		for(Channel channel:channels.values())
+			channel.removeReader(host);
+	}
+
+	private void await(Channel channel, int cursor) throws ServerNotActiveException, InterruptedException {
+		if(channel.getSequence() > cursor)
+			return;
+		final String ip = getClientHost();
+		channel.await(ip, cursor, new BooleanSupplier() {
+			public boolean getAsBoolean() {
+				return !users.contains(ip);
+			}
+		});
+	}
+
+	private int append(String channel, List<String> e, int sequence) throws RemoteException, ServerNotActiveException, InterruptedException {
+		return append(channel, getClientHost(), e, sequence);
+	}
+
+	private int append(String channel, String author, List<String> e, int sequence) throws RemoteException, InterruptedException {
+		long start = System.nanoTime();
+		int firstIndex;
+		if(follower != null)
+			firstIndex = follower.forward(channel, author, e, sequence);
+		else if(sequence < 0)
+			firstIndex = getChannel(channel).append(author, e);
+		else
+			firstIndex = get(getChannel(channel).append(author, e, sequence, SEQUENCE_TIMEOUT));
+		metrics.recordNotify(start);
+		return firstIndex;
+	}
+
+	private static int get(CompletableFuture<Integer> result) throws RemoteException, InterruptedException {
+		try {
+			return result.get();
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RemoteException)
+				throw (RemoteException) e.getCause();
+			throw new RemoteException("Events could not be saved", e.getCause());
+		}
+	}
+
+	private static String toLog(String channel) {
+		return channel == null || channel.equals(DEFAULT_CHANNEL) ? "" : " on " + channel;
+	}
+
 	private List<String> getFilesInDirectory(File directory){
 		List<String> files = new ArrayList<String>();
 		for(File file:directory.listFiles()) {
@@ -108,17 +504,123 @@ public class Server extends RMIServer implements ServerInterface {
 	/** PUBLIC METHODS **/
 	/********************/
 	
+	/** Open the server on a TCP port, alongside RMI.
+	 * @param port - TCP port.
+	 * @param threads - Number of event loops.
+	 * @throws IOException if the port could not be bound.
+	 */
+	public void openTcp(int port, int threads) throws IOException {
+		tcpServer = new TcpServer(new Caller() {
+			public Object call(String host, Method method, Object[] args) throws InvocationTargetException, IllegalAccessException {
+				return Server.this.call(host, method, args);
+			}
+		}, this, port, threads, getLogger());
+		tcpServer.open();
+	}
+
+	/** Open a session for a client running in the same JVM, such as a load generator.<br>
+	 * The calls made through the returned proxy are identified by a new session id of the host, like the calls of a remote session.
+	 * @param host - Client host.
+	 * @return Server interface of the session, which is not exported.
+	 */
+	public ServerInterface openLocalSession(String host) {
+		return Session.local(this, newSession(host));
+	}
+
+	/** Make this server a follower of a leader.<br>
+	 * The opened channels are copied from the leader, and the other channels when they are opened.
+	 * The writes are forwarded to the leader only if both servers were given the same {@code setFollowerSecret}.
+	 * The events of this server must be a copy of the events of the leader: a follower never publishes its own events.
+	 * @param transport - Transport used to contact the leader.
+	 * @param ip - Leader ip.
+	 * @param port - Leader port.
+	 * @param name - Leader name.
+	 */
+	public void follow(Transport transport, String ip, int port, String name) {
+		synchronized(channels) {
+			follower = new Follower(transport, ip, port, name, followerSecret, getLogger());
+			for(Channel channel:channels.values())
+				follower.follow(channel);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.transport.Awaitable#getSequence(java.lang.String)
+	 */
+	public int getSequence(String channel) throws RemoteException {
+		return getChannel(channel).getSequence();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.transport.Awaitable#isConnected(java.lang.String)
+	 */
+	public boolean isConnected(String host) {
+		return users.contains(host);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.transport.Awaitable#whenPublished(java.lang.String, java.lang.String, int, java.lang.Runnable)
+	 */
+	public void whenPublished(String host, String channel, int cursor, Runnable task) throws RemoteException {
+		getChannel(channel).listen(host, cursor, task);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.transport.Awaitable#notifyEvents(java.lang.String, java.lang.String, java.util.List, int)
+	 */
+	public CompletableFuture<Integer> notifyEvents(String host, String channel, List<String> e, int sequence) throws RemoteException {
+		if(follower != null) {	//The leader orders the batches, the call waits for it
+			CompletableFuture<Integer> result = new CompletableFuture<Integer>();
+			try {
+				result.complete(append(channel, host, e, sequence));
+			} catch (RemoteException | InterruptedException exception) {
+				result.completeExceptionally(exception);
+			}
+			return result;
+		}
+		final long start = System.nanoTime();
+		return getChannel(channel).append(host, e, sequence, SEQUENCE_TIMEOUT).whenComplete(new BiConsumer<Integer, Throwable>() {
+			public void accept(Integer firstIndex, Throwable error) {
+				metrics.recordNotify(start);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.transport.Awaitable#newSession(java.lang.String)
+	 */
+	public String newSession(String host) {
+		return host + "#" + Long.toString(nextSession.incrementAndGet(), 36);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.transport.Awaitable#closed(java.lang.String)
+	 */
+	public void closed(String host) {
+		if(host.indexOf('#') >= 0)
+			closeSession(host, true);
+		else if(!users.contains(host))
+			expire(host);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#openSession()
+	 */
+	public ServerInterface openSession() throws RemoteException, ServerNotActiveException {
+		String id = newSession(getClientHost());
+		ServerInterface session = Session.export(this, id, getPort());
+		sessions.put(id, session);
+		return session;
+	}
+
 	/* (non-Javadoc)
 	 * @see fr.eve.ServerInterface#connect(java.lang.String, int)
 	 */
 	public String connect() throws RemoteException, AlreadyConnectedException, ServerNotActiveException {
 		String ip = getClientHost();
-		synchronized(users) {
-			if(users.containsKey(ip))
-				throw new AlreadyConnectedException();
-
-			users.put(ip, ip);
-		}
+		if(!users.add(ip))
+			throw new AlreadyConnectedException();
+		metrics.connected();
 		getLogger().log(ip + " joined the network.");
 		return ip;
 	}
@@ -130,6 +632,27 @@ public class Server extends RMIServer implements ServerInterface {
 		return this.initialFiles;
 	}
 	
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#getInitialFilesManifest()
+	 */
+	public List<InitialFile> getInitialFilesManifest() throws RemoteException{
+		List<InitialFile> initialFiles = new ArrayList<InitialFile>();
+		for(String fileName:this.initialFiles) {
+			File file = new File(fileName);
+			InitialFile initialFile = manifest.get(fileName);
+			if(initialFile == null || !initialFile.isUpToDate(file)) {
+				try {
+					initialFile = InitialFile.hash(fileName, file);
+				} catch (IOException e) {
+					throw new RemoteException(fileName + " could not be hashed", e);
+				}
+				manifest.put(fileName, initialFile);
+			}
+			initialFiles.add(initialFile);
+		}
+		return initialFiles;
+	}
+	
 	/* (non-Javadoc)
 	 * @see fr.eve.ServerInterface#getInitialFile()
 	 */
@@ -138,79 +661,245 @@ public class Server extends RMIServer implements ServerInterface {
 			return null;
 		File initialFile = new File(fileName);
 		try {
-			byte buffer[] = new byte[(int) initialFile.length()];
-			BufferedInputStream input;
-			input = new	BufferedInputStream(new FileInputStream(initialFile));
-			input.read(buffer,0,buffer.length);
-			input.close();
-			return(buffer);
+			RandomAccessFile input = new RandomAccessFile(initialFile, "r");
+			try {
+				byte buffer[] = new byte[(int) input.length()];
+				input.readFully(buffer);
+				return(buffer);
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#getInitialFileChunk(java.lang.String, long, int)
+	 */
+	public FileChunk getInitialFileChunk(String fileName, long offset, int length) throws RemoteException{
+		if(!this.initialFiles.contains(fileName))
+			return null;
+		try {
+			RandomAccessFile input = new RandomAccessFile(fileName, "r");
+			try {
+				long fileLength = input.length();
+				byte buffer[] = new byte[(int) Math.max(Math.min(Math.min(length, MAX_CHUNK_SIZE), fileLength - offset), 0)];
+				input.seek(offset);
+				input.readFully(buffer);
+				return new FileChunk(fileName, offset, fileLength, buffer);
+			} finally {
+				input.close();
+			}
 		} catch (IOException e) {
 			return null;
 		}
 	}
 	
 	/* (non-Javadoc)
-	 * @see fr.eve.ServerInterface#notifyEvent(java.lang.String, java.lang.String)
+	 * @see fr.eve.ServerInterface#notifyEvent(java.lang.String)
 	 */
 	public void notifyEvent(String e) throws RemoteException, ServerNotActiveException{
+		notifyEvent(DEFAULT_CHANNEL, e);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#notifyEvent(java.lang.String, java.lang.String)
+	 */
+	public void notifyEvent(String channel, String e) throws RemoteException, ServerNotActiveException{
+		try {
+			append(channel, Collections.singletonList(e), -1);
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Event could not be forwarded", exception);
+		}
+		if(getLogger().isLoggable(LogLevel.DEBUG))
+			getLogger().log(LogLevel.DEBUG, getClientHost() + " added \"" + e + "\"" + toLog(channel) + ".");
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#notifyEvents(java.util.List)
+	 */
+	public int notifyEvents(List<String> e) throws RemoteException, ServerNotActiveException{
+		return notifyEvents(DEFAULT_CHANNEL, e);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#notifyEvents(java.lang.String, java.util.List)
+	 */
+	public int notifyEvents(String channel, List<String> e) throws RemoteException, ServerNotActiveException{
+		int firstIndex;
+		try {
+			firstIndex = append(channel, e, -1);
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Events could not be forwarded", exception);
+		}
+		if(!e.isEmpty() && getLogger().isLoggable(LogLevel.DEBUG))
+			getLogger().log(LogLevel.DEBUG, getClientHost() + " added " + e.size() + " events" + toLog(channel) + ".");
+		return firstIndex;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#notifyEvents(java.util.List, int)
+	 */
+	public int notifyEvents(List<String> e, int sequence) throws RemoteException, ServerNotActiveException, InterruptedException{
+		return notifyEvents(DEFAULT_CHANNEL, e, sequence);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#notifyEvents(java.lang.String, java.util.List, int)
+	 */
+	public int notifyEvents(String channel, List<String> e, int sequence) throws RemoteException, ServerNotActiveException, InterruptedException{
+		int firstIndex = append(channel, e, sequence);
+		if(getLogger().isLoggable(LogLevel.DEBUG))
+			getLogger().log(LogLevel.DEBUG, getClientHost() + " added " + e.size() + " events (batch " + sequence + ")" + toLog(channel) + ".");
+		return firstIndex;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#joinAsFollower(java.lang.String)
+	 */
+	public void joinAsFollower(String secret) throws RemoteException, AccessException, ServerNotActiveException {
 		String ip = getClientHost();
-		synchronized(events) {
-			Event event = new Event(ip, LocalDateTime.now(), e);
-			event.setIndex(events.size());
-			events.add(event);
-		}
-		synchronized(users) {
-			for(String user:users.keySet()) {
-				synchronized(users.get(user)){
-					users.get(user).notifyAll();
-				}
-			}
-			getLogger().log(ip + " added \"" + e + "\".");
+		String followerSecret = this.followerSecret;
+		if(followerSecret == null || followerSecret.isEmpty() || secret == null || !MessageDigest.isEqual(followerSecret.getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8))) {
+			getLogger().log(LogLevel.WARN, ip + " could not join as a follower.");
+			throw new AccessException("Not a follower");
 		}
+		if(!users.contains(ip))
+			throw new AccessException("Not connected");
+		if(followers.add(ip))
+			getLogger().log(ip + " joined as a follower.");
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#forwardEvents(java.lang.String, java.lang.String, java.util.List, int)
+	 */
+	public int forwardEvents(String channel, String author, List<String> e, int sequence) throws RemoteException, ServerNotActiveException, InterruptedException{
+		if(!followers.contains(getClientHost()))
+			throw new AccessException(getClientHost() + " is not a follower");
+		int firstIndex = append(channel, author, e, sequence);
+		if(getLogger().isLoggable(LogLevel.DEBUG))
+			getLogger().log(LogLevel.DEBUG, getClientHost() + " forwarded " + e.size() + " events of " + author + toLog(channel) + ".");
+		return firstIndex;
 	}
 	
 	/* (non-Javadoc)
-	 * @see fr.eve.server.ServerInterface#getEvents(java.lang.String, int)
+	 * @see fr.eve.server.ServerInterface#getEvents(fr.eve.server.Event)
 	 */
+	@Deprecated
 	public List<Event> getEvents(Event lastEvent) throws RemoteException, InterruptedException, ServerNotActiveException {
-		if(lastEvent == null)
-			return events;
-		
-		if(lastEvent.getIndex()+1 == events.size()) {			
-			String ip = getClientHost();
-			synchronized(users.get(ip)) {
-				users.get(ip).wait();
-			}
-		}
-		synchronized(events) {
-			return new ArrayList<Event>(events.subList(lastEvent.getIndex()+1, events.size()));
-		}
+		Channel channel = getChannel(DEFAULT_CHANNEL);
+		int fromIndex = lastEvent == null ? 0 : lastEvent.getIndex()+1;
+		channel.setReader(getClientHost(), fromIndex);
+		if(lastEvent != null)
+			await(channel, fromIndex);
+		long start = System.nanoTime();
+		List<Event> events = channel.getPage(fromIndex, LEGACY_PAGE_SIZE, LEGACY_PAGE_BYTES).getEvents();
+		metrics.recordGetEvents(start);
+		metrics.delivered(events.size());
+		return events;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#getEvents(int, int, int)
+	 */
+	public EventPage getEvents(int cursor, int maxCount, int maxBytes) throws RemoteException, InterruptedException, ServerNotActiveException {
+		return getEvents(DEFAULT_CHANNEL, cursor, maxCount, maxBytes);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#getEvents(java.lang.String, int, int, int)
+	 */
+	public EventPage getEvents(String channel, int cursor, int maxCount, int maxBytes) throws RemoteException, InterruptedException, ServerNotActiveException {
+		return getEvents(channel, cursor, maxCount, maxBytes, null);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#getEvents(java.lang.String, int, int, int, fr.eve.server.EventFilter)
+	 */
+	public EventPage getEvents(String channel, int cursor, int maxCount, int maxBytes, EventFilter filter) throws RemoteException, InterruptedException, ServerNotActiveException {
+		String ip = getClientHost();
+		Channel events = getChannel(channel);
+		events.setReader(ip, cursor);
+		await(events, cursor);
+		long start = System.nanoTime();
+		EventPage page = events.getPage(cursor, maxCount, maxBytes, ip, filter);
+		metrics.recordGetEvents(start);
+		metrics.delivered(page.getEvents().size());
+		return page;
 	}
 	
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#getState(java.lang.String)
+	 */
+	public StateSnapshot getState(String channel) throws RemoteException {
+		return getChannel(channel).getState();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#subscribe(fr.eve.client.ClientInterface, int)
+	 */
+	public void subscribe(ClientInterface client, int cursor) throws RemoteException, ServerNotActiveException {
+		subscribe(DEFAULT_CHANNEL, client, cursor);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#subscribe(java.lang.String, fr.eve.client.ClientInterface, int)
+	 */
+	public void subscribe(String channel, ClientInterface client, int cursor) throws RemoteException, ServerNotActiveException {
+		subscribe(channel, client, cursor, null);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerInterface#subscribe(java.lang.String, fr.eve.client.ClientInterface, int, fr.eve.server.EventFilter)
+	 */
+	public void subscribe(String channel, ClientInterface client, int cursor, EventFilter filter) throws RemoteException, ServerNotActiveException {
+		String ip = getClientHost();
+		Channel events = getChannel(channel);
+		events.subscribe(new Subscriber(events, ip, client, filter, cursor, overflowPolicy, pushQueueSize, PUSH_BATCH_SIZE, pushExecutor));
+		getLogger().log(ip + " subscribed from event " + cursor + toLog(channel) + (filter == null ? "" : " with " + filter) + ".");
+	}
+
 	/* (non-Javadoc)
 	 * @see fr.eve.ServerInterface#disconnect(java.lang.String)
 	 */
 	public void disconnect() throws RemoteException, ServerNotActiveException, AlreadyDisconnectedException {
 		String ip = getClientHost();
-		synchronized(users) {
-			if(!users.containsKey(ip))
-				throw new AlreadyDisconnectedException();
-			
-			synchronized(users.get(ip)) {
-				users.get(ip).notifyAll();
-			}
-			users.remove(ip);
-			getLogger().log(ip + " disconnected.");
-			if(users.isEmpty()) {
-				try {
-					synchronized(events) {
-						new EventsDAO(this.eventFileName).update(events);
-					}
-					getLogger().log("Events saved.");
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			}
+		if(!users.remove(ip))
+			throw new AlreadyDisconnectedException();
+		followers.remove(ip);
+		metrics.disconnected();
+		for(Channel channel:channels.values())
+			channel.disconnect(ip);
+		getLogger().log(ip + " disconnected.");
+		if(users.isEmpty()) {
+			for(Channel channel:channels.values())
+				channel.sync();
+			getLogger().log("Events saved.");
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see fr.eve.rmi.RMIServer#close()
+	 */
+	public void close() throws AccessException, RemoteException, NotBoundException {
+		super.close();
+		for(String id:sessions.keySet())
+			closeSession(id, false);
+		if(follower != null)
+			follower.close();
+		try {
+			if(tcpServer != null)
+				tcpServer.close();
+			pushExecutor.shutdownNow();
+			notifyExecutor.shutdownNow();
+			timer.shutdownNow();
+			for(Channel channel:channels.values())
+				channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 	}
 }
@@ -1,15 +1,27 @@
 package fr.eve.server;
 
+import java.rmi.AccessException;
 import java.rmi.RemoteException;
 import java.rmi.server.ServerNotActiveException;
 import java.util.List;
 
+import fr.eve.client.ClientInterface;
+
 /** The {@code ServerInterface} interface declare the remote methods that can be called by the clients.
  */
 public interface ServerInterface extends java.rmi.Remote {
 	
+	/** Open a session: a new identity for a client, independent of its host.<br>
+	 * The calls made through the returned interface are identified by the session id, so several clients of the same host or JVM do not share
+	 * their connection state, their subscriptions nor their authorship. Called on a session, the session itself is returned.
+	 * @return Server interface of the session.
+	 * @throws RemoteException if the session could not be opened.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public ServerInterface openSession() throws RemoteException, ServerNotActiveException;
+
 	/** Notify the server for a new user on the network.
-	 * @return The client ip.
+	 * @return The client id: the session id when called through a session, the client ip otherwise.
 	 * @throws RemoteException if the registry could not be exported or contacted.
 	 * @throws AlreadyConnectedException if the user is already connected to the network.
 	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
@@ -22,12 +34,29 @@ public interface ServerInterface extends java.rmi.Remote {
 	 */
 	public List<String> getInitialFiles() throws RemoteException;
 	
+	/** Get the initial files manifest.<br>
+	 * Each entry gives the size and the hash of a file, so a client can download only the missing or changed files.
+	 * @return Initial files manifest, in the order of {@code getInitialFiles}.
+	 * @throws RemoteException if the registry could not be exported or contacted.
+	 */
+	public List<InitialFile> getInitialFilesManifest() throws RemoteException;
+	
 	/** Get the initial file data.
 	 * @param fileName - The name of the file to download.
 	 * @return Initial file data, {@code null} if the file does not exist.
 	 * @throws RemoteException if the registry could not be exported or contacted.
 	 */
 	public byte[] getInitialFile(String fileName) throws RemoteException;
+
+	/** Get a chunk of an initial file.<br>
+	 * The chunk is shorter than {@code length} at the end of the file or if {@code length} exceeds {@code MAX_CHUNK_SIZE}.
+	 * @param fileName - The name of the file to download.
+	 * @param offset - Offset of the chunk in the file.
+	 * @param length - Maximum length of the chunk.
+	 * @return Chunk of the file, {@code null} if the file does not exist.
+	 * @throws RemoteException if the registry could not be exported or contacted.
+	 */
+	public FileChunk getInitialFileChunk(String fileName, long offset, int length) throws RemoteException;
 	
 	/** Notify the client of an event.
 	 * @param event - Event to notify.
@@ -36,15 +65,169 @@ public interface ServerInterface extends java.rmi.Remote {
 	 */
 	public void notifyEvent(String event) throws RemoteException, ServerNotActiveException;
 
-	/** Notify the client of an event.
-	 * @param lastEvent - Event to notify.
+	/** Notify the server of an event on a channel.<br>
+	 * The channel is created the first time, its name is made of at most 64 letters, digits, {@code _} or {@code -}.
+	 * @param channel - Name of the channel.
+	 * @param event - Event to notify.
+	 * @throws RemoteException if the registry could not be exported or contacted, or if the channel could not be opened.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public void notifyEvent(String channel, String event) throws RemoteException, ServerNotActiveException;
+
+	/** Notify the server of a batch of events.<br>
+	 * The events get contiguous indexes and are published together, with a single wakeup of the readers and a single flush of the log.
+	 * @param events - Events to notify, in order.
+	 * @return Index of the first event of the batch.
+	 * @throws RemoteException if the registry could not be exported or contacted.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public int notifyEvents(List<String> events) throws RemoteException, ServerNotActiveException;
+
+	/** Notify the server of a batch of events on a channel.
+	 * @param channel - Name of the channel.
+	 * @param events - Events to notify, in order.
+	 * @return Index of the first event of the batch in the channel.
+	 * @throws RemoteException if the registry could not be exported or contacted, or if the channel could not be opened.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public int notifyEvents(String channel, List<String> events) throws RemoteException, ServerNotActiveException;
+
+	/** Notify the server of a numbered batch of events.<br>
+	 * The batches of a client are applied in the order of their number, so a client can send a batch before the previous one is acknowledged.
+	 * A batch waits at most {@code SEQUENCE_TIMEOUT} milliseconds for the previous one, and at most 64 batches of a client wait at once. The batch {@code 0} starts a new sequence.
+	 * @param events - Events to notify, in order.
+	 * @param sequence - Number of the batch for this client.
+	 * @return Index of the first event of the batch.
+	 * @throws RemoteException if the registry could not be exported or contacted, or if the previous batch did not arrive in time.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 * @throws InterruptedException if any thread interrupted the current thread.
+	 */
+	public int notifyEvents(List<String> events, int sequence) throws RemoteException, ServerNotActiveException, InterruptedException;
+
+	/** Notify the server of a numbered batch of events on a channel. Each channel has its own sequence of batches.
+	 * @param channel - Name of the channel.
+	 * @param events - Events to notify, in order.
+	 * @param sequence - Number of the batch for this client on this channel.
+	 * @return Index of the first event of the batch in the channel.
+	 * @throws RemoteException if the registry could not be exported or contacted, if the channel could not be opened or if the previous batch did not arrive in time.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 * @throws InterruptedException if any thread interrupted the current thread.
+	 */
+	public int notifyEvents(String channel, List<String> events, int sequence) throws RemoteException, ServerNotActiveException, InterruptedException;
+
+	/** Identify the client as a follower of this server, allowed to call {@code forwardEvents}.<br>
+	 * The secret is the one given to the leader with {@code Server.setFollowerSecret}. The identity lasts until the client disconnects.
+	 * @param secret - Secret shared by the leader and its followers.
+	 * @throws RemoteException if the registry could not be exported or contacted.
+	 * @throws AccessException if the server has no follower secret or if the secret is wrong.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public void joinAsFollower(String secret) throws RemoteException, AccessException, ServerNotActiveException;
+
+	/** Notify the leader of events sent to one of its followers.<br>
+	 * The events are published with the ip of the client as author. A numbered batch is applied after the previous batch of the client.
+	 * Only a client identified by {@code joinAsFollower} may forward events, since it chooses their author.
+	 * @param channel - Name of the channel.
+	 * @param author - Ip of the client who sent the events to the follower.
+	 * @param events - Events to notify, in order.
+	 * @param sequence - Number of the batch for this client on this channel, {@code -1} if the batch is not numbered.
+	 * @return Index of the first event of the batch in the channel.
+	 * @throws RemoteException if the registry could not be exported or contacted, if the channel could not be opened or if the previous batch did not arrive in time.
+	 * @throws AccessException if the client is not a follower.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 * @throws InterruptedException if any thread interrupted the current thread.
+	 */
+	public int forwardEvents(String channel, String author, List<String> events, int sequence) throws RemoteException, ServerNotActiveException, InterruptedException;
+
+	/** Get the events following an event, waiting for a new event if there is none.<br>
+	 * At most {@code Server.LEGACY_PAGE_SIZE} events are returned, the next ones are returned by a new call from the last returned event.
+	 * @param lastEvent - Last event received by the client, {@code null} to get the history from its first event without waiting.
 	 * @return List of new events.
 	 * @throws RemoteException if the registry could not be exported or contacted.
 	 * @throws InterruptedException if any thread interrupted the current thread.
 	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 * @deprecated A call from {@code null} used to read the whole history in one reply. Use {@code getEvents(int, int, int)}, whose page is bounded by the client.
 	 */
+	@Deprecated
 	public List<Event> getEvents(Event lastEvent) throws RemoteException, InterruptedException, ServerNotActiveException;
 
+	/** Get a page of events from a cursor, waiting for a new event if there is none at the cursor.<br>
+	 * The page holds at most {@code maxCount} events and stops before the event which would exceed {@code maxBytes}, it always holds at least one event.
+	 * @param cursor - Index of the first event to get, {@code 0} to get the whole history.
+	 * @param maxCount - Maximum number of events in the page.
+	 * @param maxBytes - Maximum size of the events of the page, in bytes.
+	 * @return Page of events with the cursor of the next page.
+	 * @throws RemoteException if the registry could not be exported or contacted.
+	 * @throws InterruptedException if any thread interrupted the current thread.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public EventPage getEvents(int cursor, int maxCount, int maxBytes) throws RemoteException, InterruptedException, ServerNotActiveException;
+
+	/** Get a page of events of a channel from a cursor, waiting for a new event if there is none at the cursor.
+	 * @param channel - Name of the channel.
+	 * @param cursor - Index of the first event to get in the channel, {@code 0} to get the whole history.
+	 * @param maxCount - Maximum number of events in the page.
+	 * @param maxBytes - Maximum size of the events of the page, in bytes.
+	 * @return Page of events with the cursor of the next page.
+	 * @throws RemoteException if the registry could not be exported or contacted, or if the channel could not be opened.
+	 * @throws InterruptedException if any thread interrupted the current thread.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public EventPage getEvents(String channel, int cursor, int maxCount, int maxBytes) throws RemoteException, InterruptedException, ServerNotActiveException;
+
+	/** Get a page of the events of a channel accepted by a filter, waiting for a new event if there is none at the cursor.<br>
+	 * The filter is checked by the server, so the rejected events are not sent to the client. The cursor of the next page moves past them,
+	 * the page may be empty when all its events are rejected.
+	 * @param channel - Name of the channel.
+	 * @param cursor - Index of the first event to get in the channel, {@code 0} to get the whole history.
+	 * @param maxCount - Maximum number of events read for the page, accepted or not.
+	 * @param maxBytes - Maximum size of the events read for the page, in bytes.
+	 * @param filter - Events to get, {@code null} to get all the events.
+	 * @return Page of the accepted events with the cursor of the next page.
+	 * @throws RemoteException if the registry could not be exported or contacted, or if the channel could not be opened.
+	 * @throws InterruptedException if any thread interrupted the current thread.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public EventPage getEvents(String channel, int cursor, int maxCount, int maxBytes, EventFilter filter) throws RemoteException, InterruptedException, ServerNotActiveException;
+
+	/** Get the last checkpoint of the state of a channel, folded by the reducer of the server.<br>
+	 * A new client applies the state then reads the events from its index, instead of replaying the whole history.
+	 * @param channel - Name of the channel.
+	 * @return State snapshot, {@code null} if the channel has no reducer or if its state was not checkpointed yet.
+	 * @throws RemoteException if the registry could not be exported or contacted, or if the channel could not be opened.
+	 */
+	public StateSnapshot getState(String channel) throws RemoteException;
+
+	/** Ask the server to push the events to a client, from a cursor.<br>
+	 * The events are sent in order by batches to {@code ClientInterface.notifyEvents}. Each client has its own bounded queue,
+	 * what happens when it is full depends on the {@code OverflowPolicy} of the server. The subscription ends with {@code disconnect}.
+	 * @param client - Client to call, exported by the client.
+	 * @param cursor - Index of the first event to push, {@code 0} to get the whole history.
+	 * @throws RemoteException if the registry could not be exported or contacted.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public void subscribe(ClientInterface client, int cursor) throws RemoteException, ServerNotActiveException;
+
+	/** Ask the server to push the events of a channel to a client, from a cursor.<br>
+	 * A client has at most one subscription per channel, the events are sent with the name of their channel.
+	 * @param channel - Name of the channel.
+	 * @param client - Client to call, exported by the client.
+	 * @param cursor - Index of the first event to push in the channel, {@code 0} to get the whole history.
+	 * @throws RemoteException if the registry could not be exported or contacted, or if the channel could not be opened.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public void subscribe(String channel, ClientInterface client, int cursor) throws RemoteException, ServerNotActiveException;
+
+	/** Ask the server to push the events of a channel accepted by a filter to a client, from a cursor.<br>
+	 * The filter is checked by the server, the rejected events are never sent to the client.
+	 * @param channel - Name of the channel.
+	 * @param client - Client to call, exported by the client.
+	 * @param cursor - Index of the first event to push in the channel, {@code 0} to get the whole history.
+	 * @param filter - Events to push, {@code null} to push all the events.
+	 * @throws RemoteException if the registry could not be exported or contacted, or if the channel could not be opened.
+	 * @throws ServerNotActiveException if no remote method invocation is being processed in the current thread.
+	 */
+	public void subscribe(String channel, ClientInterface client, int cursor, EventFilter filter) throws RemoteException, ServerNotActiveException;
 	
 	/** Notify the server for a user disconnection on the network.
 	 * @throws RemoteException if the registry could not be exported or contacted.
@@ -0,0 +1,219 @@
+package fr.eve.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import fr.eve.utils.Histogram;
+
+/** The {@code ServerMetrics} class records the activity of a server.<br><br>
+ * Recording only increments counters and histograms, it never allocates, so the metrics are always enabled.
+ * The gauges (waiting readers, subscribers, history, lags) are read from the channels when they are asked.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private Map<String, Channel> channels;
+	private LongAdder published;
+	private LongAdder delivered;
+	private LongAdder connects;
+	private LongAdder disconnects;
+	private Histogram notifyLatency;
+	private Histogram getEventsLatency;
+	private Histogram persistenceLatency;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code ServerMetrics} class.
+	 * @param channels - Channels of the server.
+	 */
+	ServerMetrics(Map<String, Channel> channels) {
+		this.channels = channels;
+		this.published = new LongAdder();
+		this.delivered = new LongAdder();
+		this.connects = new LongAdder();
+		this.disconnects = new LongAdder();
+		this.notifyLatency = new Histogram();
+		this.getEventsLatency = new Histogram();
+		this.persistenceLatency = new Histogram();
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerMetricsMXBean#getPublishedEvents()
+	 */
+	public long getPublishedEvents() {
+		return published.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerMetricsMXBean#getDeliveredEvents()
+	 */
+	public long getDeliveredEvents() {
+		return delivered.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerMetricsMXBean#getConnects()
+	 */
+	public long getConnects() {
+		return connects.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerMetricsMXBean#getDisconnects()
+	 */
+	public long getDisconnects() {
+		return disconnects.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerMetricsMXBean#getNotifyLatency()
+	 */
+	public Histogram.Snapshot getNotifyLatency() {
+		return notifyLatency.snapshot();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerMetricsMXBean#getGetEventsLatency()
+	 */
+	public Histogram.Snapshot getGetEventsLatency() {
+		return getEventsLatency.snapshot();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerMetricsMXBean#getPersistenceLatency()
+	 */
+	public Histogram.Snapshot getPersistenceLatency() {
+		return persistenceLatency.snapshot();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerMetricsMXBean#getWaitingReaders()
+	 */
+	public int getWaitingReaders() {
+		int waiters = 0;
+		for(Channel channel:channels.values())
+			waiters += channel.getWaiters();
+		return waiters;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerMetricsMXBean#getSubscribers()
+	 */
+	public int getSubscribers() {
+		int subscribers = 0;
+		for(Channel channel:channels.values())
+			subscribers += channel.getSubscriberCount();
+		return subscribers;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerMetricsMXBean#getHistorySize()
+	 */
+	public long getHistorySize() {
+		long events = 0;
+		for(Channel channel:channels.values())
+			events += channel.getSequence();
+		return events;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerMetricsMXBean#getHotBytes()
+	 */
+	public long getHotBytes() {
+		long bytes = 0;
+		for(Channel channel:channels.values())
+			bytes += channel.getHotBytes();
+		return bytes;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerMetricsMXBean#getPageCacheHits()
+	 */
+	public long getPageCacheHits() {
+		long hits = 0;
+		for(Channel channel:channels.values())
+			hits += channel.getEventLog().getCacheHits();
+		return hits;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerMetricsMXBean#getPageCacheMisses()
+	 */
+	public long getPageCacheMisses() {
+		long misses = 0;
+		for(Channel channel:channels.values())
+			misses += channel.getEventLog().getCacheMisses();
+		return misses;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.eve.server.ServerMetricsMXBean#getClientLags()
+	 */
+	public Map<String, Integer> getClientLags() {
+		Map<String, Integer> lags = new TreeMap<String, Integer>();
+		for(Channel channel:channels.values())
+			channel.getLags(lags);
+		return lags;
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Count published events.
+	 * @param events - Number of events.
+	 */
+	void published(int events) {
+		published.add(events);
+	}
+
+	/** Count delivered events.
+	 * @param events - Number of events.
+	 */
+	void delivered(int events) {
+		delivered.add(events);
+	}
+
+	/** Count a connection.
+	 */
+	void connected() {
+		connects.increment();
+	}
+
+	/** Count a disconnection.
+	 */
+	void disconnected() {
+		disconnects.increment();
+	}
+
+	/** Record the latency of a call notifying events.
+	 * @param start - Start of the call, from {@code System.nanoTime}.
+	 */
+	void recordNotify(long start) {
+		notifyLatency.recordSince(start);
+	}
+
+	/** Record the latency of a call getting events.
+	 * @param start - Start of the call, from {@code System.nanoTime}.
+	 */
+	void recordGetEvents(long start) {
+		getEventsLatency.recordSince(start);
+	}
+
+	/** Record the latency of a write in a log.
+	 * @param start - Start of the write, from {@code System.nanoTime}.
+	 */
+	void recordPersistence(long start) {
+		persistenceLatency.recordSince(start);
+	}
+}
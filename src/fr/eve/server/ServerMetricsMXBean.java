@@ -0,0 +1,81 @@
+package fr.eve.server;
+
+import java.util.Map;
+
+import fr.eve.utils.Histogram;
+
+/** The {@code ServerMetricsMXBean} interface declare the metrics of a server exposed with JMX.<br><br>
+ * The bean is registered by {@code RMIServer.open} as {@code fr.eve:type=Server,name=<name>,port=<port>}.
+ */
+public interface ServerMetricsMXBean {
+
+	/** Get the number of published events, including the events copied from a leader.
+	 * @return Number of published events.
+	 */
+	public long getPublishedEvents();
+
+	/** Get the number of events delivered to the clients, by {@code getEvents} or pushed to the subscribers.
+	 * @return Number of delivered events.
+	 */
+	public long getDeliveredEvents();
+
+	/** Get the number of connections.
+	 * @return Number of calls to {@code connect}.
+	 */
+	public long getConnects();
+
+	/** Get the number of disconnections.
+	 * @return Number of calls to {@code disconnect}.
+	 */
+	public long getDisconnects();
+
+	/** Get the latency of the calls notifying events, from the call to the publication.
+	 * @return Latencies in microseconds.
+	 */
+	public Histogram.Snapshot getNotifyLatency();
+
+	/** Get the latency of the calls getting events, once an event is available.
+	 * @return Latencies in microseconds.
+	 */
+	public Histogram.Snapshot getGetEventsLatency();
+
+	/** Get the latency of the writes of the events in the logs.
+	 * @return Latencies in microseconds.
+	 */
+	public Histogram.Snapshot getPersistenceLatency();
+
+	/** Get the number of readers waiting for a new event.
+	 * @return Number of waiting readers, in all the channels.
+	 */
+	public int getWaitingReaders();
+
+	/** Get the number of subscribers to which the events are pushed.
+	 * @return Number of subscribers, in all the channels.
+	 */
+	public int getSubscribers();
+
+	/** Get the number of events in the history.
+	 * @return Number of events, in all the channels.
+	 */
+	public long getHistorySize();
+
+	/** Get the size of the recent events kept in memory.
+	 * @return Size of the events in bytes, in all the channels.
+	 */
+	public long getHotBytes();
+
+	/** Get the number of pages of older events found in the page cache of the logs.
+	 * @return Number of cache hits, in all the channels.
+	 */
+	public long getPageCacheHits();
+
+	/** Get the number of pages of older events decoded from the logs.
+	 * @return Number of cache misses, in all the channels.
+	 */
+	public long getPageCacheMisses();
+
+	/** Get the lag of the connected clients.
+	 * @return Number of events not read yet by each client, keyed by {@code channel/host}.
+	 */
+	public Map<String, Integer> getClientLags();
+}
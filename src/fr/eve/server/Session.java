@@ -0,0 +1,98 @@
+package fr.eve.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.rmi.server.Unreferenced;
+
+/** The {@code Session} class represent the identity of a client on the server, independent of its host.<br><br>
+ * A session is a proxy of the server, exported as a remote object on the server port: each call made through it is run as the session by {@code Server.call},
+ * so the users, the subscriptions and the authors of the events are keyed by the session id. Several clients of the same host or of the same JVM each have their own session,
+ * while the RMI connections of a JVM to the server port are shared by all its sessions.<br>
+ * The session is unexported when its client disconnects, or when the RMI distributed garbage collector finds that its client is gone.
+ * The session of a client running in the same JVM is not exported, it only sets the identity of the calls.
+ */
+class Session implements InvocationHandler {
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private Server server;
+	private String id;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code Session} class.
+	 * @param server - Server called by the session.
+	 * @param id - Session id.
+	 */
+	private Session(Server server, String id) {
+		this.server = server;
+		this.id = id;
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Export a new session.
+	 * @param server - Server called by the session.
+	 * @param id - Session id.
+	 * @param port - Port on which the session is exported, the port of the server.
+	 * @return Server interface of the session.
+	 * @throws RemoteException if the session could not be exported.
+	 */
+	static ServerInterface export(Server server, String id, int port) throws RemoteException {
+		ServerInterface session = (ServerInterface) Proxy.newProxyInstance(ServerInterface.class.getClassLoader(),
+				new Class<?>[] {ServerInterface.class, Unreferenced.class}, new Session(server, id));
+		UnicastRemoteObject.exportObject(session, port);
+		return session;
+	}
+
+	/** Create a session for a client of the same JVM, without exporting it.
+	 * @param server - Server called by the session.
+	 * @param id - Session id.
+	 * @return Server interface of the session.
+	 */
+	static ServerInterface local(Server server, String id) {
+		return (ServerInterface) Proxy.newProxyInstance(ServerInterface.class.getClassLoader(),
+				new Class<?>[] {ServerInterface.class}, new Session(server, id));
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+	 */
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if(method.getDeclaringClass() == Object.class) {
+			switch(method.getName()) {
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				return "Session [" + id + "]";
+			}
+		}
+		if(method.getDeclaringClass() == Unreferenced.class) {	//The client is gone without disconnecting
+			server.closeSession(id, true);
+			return null;
+		}
+		if(method.getName().equals("openSession"))
+			return proxy;
+
+		try {
+			Object result = server.call(id, method, args);
+			if(method.getName().equals("disconnect"))
+				server.closeSession(id, false);
+			return result;
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package fr.eve.server;
+
+import java.io.Serializable;
+
+/** The {@code StateSnapshot} class represent the state of a channel folded by a {@code Reducer}, with the index of the events it covers.<br><br>
+ * The state covers the events before {@code index}: a client which applies it only reads the events from {@code index}.
+ */
+public class StateSnapshot implements Serializable{
+
+	private static final long serialVersionUID = 4410927335081745311L;
+
+	/***************/
+	/** ATTRIBUTS **/
+	/***************/
+
+	private int index;
+	private byte[] data;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code StateSnapshot} class.
+	 * @param index - Index of the first event not folded into the state.
+	 * @param data - State encoded by the reducer.
+	 */
+	public StateSnapshot(int index, byte[] data) {
+		this.index = index;
+		this.data = data;
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the index of the first event not folded into the state.
+	 * @return Index of the next event to read after applying the state.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/** Get the encoded state.
+	 * @return State encoded by the reducer, to decode with {@code Reducer.decode}.
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	/*************/
+	/** GETTERS **/
+	/*************/
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "StateSnapshot [index=" + index + ", size=" + data.length + "]";
+	}
+}
@@ -0,0 +1,245 @@
+package fr.eve.server;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import fr.eve.client.ClientInterface;
+import fr.eve.utils.LogLevel;
+
+/** The {@code Subscriber} class represent a client to which the server pushes the events.<br><br>
+ * Each subscriber has its own bounded queue, filled by the publisher without ever blocking, and its own sender task which calls the client.
+ * A slow client only fills its own queue, the {@code OverflowPolicy} decides what happens when it is full.<br>
+ * A paused subscriber reads the events from its channel from its cursor until it reaches the published sequence, then it takes the new events from its queue again.
+ * A subscriber starts paused, so the events missed by the client are sent first.<br>
+ * The events rejected by the {@code EventFilter} of the subscriber are never queued nor sent, the cursor still moves past them.<br>
+ * The publisher and the sender only share a {@code ReentrantLock}, so none of them pins its carrier when it runs on a virtual thread.
+ */
+class Subscriber implements Runnable {
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private Channel channel;
+	private String host;
+	private ClientInterface client;
+	private EventFilter filter;
+	private OverflowPolicy policy;
+	private int batchSize;
+	private Executor executor;
+
+	private BlockingQueue<Event> queue;
+	private AtomicBoolean scheduled;
+	private ReentrantLock lock;
+	private volatile boolean paused;
+	private volatile boolean closed;
+	private volatile int cursor;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code Subscriber} class.
+	 * @param channel - Channel from which read the missed events.
+	 * @param host - Client host.
+	 * @param client - Client to call.
+	 * @param filter - Events to send, {@code null} to send all the events.
+	 * @param cursor - Index of the first event to send.
+	 * @param policy - What to do when the queue is full.
+	 * @param queueSize - Maximum number of queued events.
+	 * @param batchSize - Maximum number of events sent in one call.
+	 * @param executor - Executor running the sender task.
+	 */
+	Subscriber(Channel channel, String host, ClientInterface client, EventFilter filter, int cursor, OverflowPolicy policy, int queueSize, int batchSize, Executor executor) {
+		this.channel = channel;
+		this.host = host;
+		this.client = client;
+		this.filter = filter;
+		this.cursor = cursor;
+		this.policy = policy;
+		this.batchSize = batchSize;
+		this.executor = executor;
+		this.queue = new ArrayBlockingQueue<Event>(queueSize);
+		this.scheduled = new AtomicBoolean();
+		this.lock = new ReentrantLock();
+		this.paused = true;
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the client host.
+	 * @return Client ip.
+	 */
+	String getHost() {
+		return host;
+	}
+
+	/** Get the filter.
+	 * @return Events to send, {@code null} if all the events are sent.
+	 */
+	EventFilter getFilter() {
+		return filter;
+	}
+
+	/** Get the cursor.
+	 * @return Index of the next event to send.
+	 */
+	int getCursor() {
+		return cursor;
+	}
+
+	/** Get the number of queued events.
+	 * @return Number of events waiting to be sent.
+	 */
+	int getQueueSize() {
+		return queue.size();
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Start sending the events.
+	 */
+	void start() {
+		schedule();
+	}
+
+	/** Queue published events, without blocking. Called by the publisher, in index order.
+	 * @param author - Author of the events.
+	 * @param events - Published events.
+	 * @return {@code false} if the subscriber must be disconnected, {@code true} otherwise.
+	 */
+	boolean offer(String author, List<Event> events) {
+		lock.lock();
+		try {
+			if(closed)
+				return false;
+			if(filter != null && !filter.acceptsAuthor(host, author))
+				return true;
+			if(paused) {
+				schedule();
+				return true;
+			}
+			for(Event event:events) {
+				if(filter != null && !filter.acceptsEvent(event.getEvent()))
+					continue;
+				if(queue.offer(event))
+					continue;
+				switch(policy) {
+				case BLOCK:
+					paused = true;
+					break;
+				case DROP_OLDEST:
+					queue.poll();
+					queue.offer(event);
+					continue;
+				case DISCONNECT:
+					close();
+					return false;
+				}
+				break;
+			}
+			schedule();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Stop sending the events.
+	 */
+	void close() {
+		closed = true;
+		queue.clear();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		while(!closed) {
+			List<Event> events = new ArrayList<Event>(batchSize);
+			queue.drainTo(events, batchSize);
+			if(events.isEmpty() && paused) {
+				try {
+					events = channel.read(cursor, batchSize);
+				} catch (RemoteException e) {	//Closed, so it is never scheduled again
+					channel.getLogger().log(LogLevel.WARN, "Events of " + channel.getName() + " could not be read for " + host + " : " + e);
+					channel.unsubscribe(this, "its events could not be read");
+					return;
+				}
+				if(events.isEmpty() && resume())
+					continue;
+				if(!events.isEmpty()) {
+					int next = events.get(events.size()-1).getIndex() + 1;
+					send(accept(events));
+					cursor = Math.max(cursor, next);
+					continue;
+				}
+			}
+			if(events.isEmpty()) {
+				scheduled.set(false);
+				if(queue.isEmpty() || !scheduled.compareAndSet(false, true))
+					return;
+				continue;
+			}
+			send(events);
+		}
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void schedule() {
+		if(scheduled.compareAndSet(false, true))
+			executor.execute(this);
+	}
+
+	private List<Event> accept(List<Event> events) {
+		if(filter == null)
+			return events;
+		List<Event> accepted = new ArrayList<Event>(events.size());
+		for(Event event:events)
+			if(filter.acceptsAuthor(host, event.getAuthor()) && filter.acceptsEvent(event.getEvent()))
+				accepted.add(event);
+		return accepted;
+	}
+
+	private boolean resume() {
+		lock.lock();
+		try {
+			if(cursor < channel.getSequence())
+				return false;
+			paused = false;
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void send(List<Event> events) {
+		int skipped = 0;
+		while(skipped < events.size() && events.get(skipped).getIndex() < cursor)	//Already read from the channel while paused
+			skipped++;
+		if(skipped == events.size())
+			return;
+		events = events.subList(skipped, events.size());
+		try {
+			client.notifyEvents(channel.getName(), EventCodec.toBytes(events));
+			cursor = events.get(events.size()-1).getIndex() + 1;
+			channel.getMetrics().delivered(events.size());
+		} catch (RemoteException e) {
+			channel.unsubscribe(this, "could not be called : " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package fr.eve.transport;
+
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/** The {@code Awaitable} interface declare the methods used by a non-blocking transport to wait for new events without holding a thread,
+ * and to identify its clients by session.
+ */
+public interface Awaitable {
+
+	/** Get the published sequence of a channel.
+	 * @param channel - Name of the channel, {@code null} for the default channel.
+	 * @return Number of published events.
+	 * @throws RemoteException if the channel could not be opened.
+	 */
+	public int getSequence(String channel) throws RemoteException;
+
+	/** Check if a client is still connected, a client which is not connected does not wait for new events anymore.
+	 * @param host - Client host.
+	 * @return {@code true} if the client is connected, {@code false} otherwise.
+	 */
+	public boolean isConnected(String host);
+
+	/** Run a task once an event is published at the cursor of a channel.<br>
+	 * The task is run by a thread of the server, never under the lock of the publisher, so it should only hand the work over to another thread. It may also be run earlier when a client disconnects.
+	 * @param host - Client host, whose tasks are run when it disconnects.
+	 * @param channel - Name of the channel, {@code null} for the default channel.
+	 * @param cursor - Index of the awaited event.
+	 * @param task - Task to run.
+	 * @throws RemoteException if the channel could not be opened.
+	 */
+	public void whenPublished(String host, String channel, int cursor, Runnable task) throws RemoteException;
+
+	/** Publish a numbered batch of events of a client without waiting for its previous batch.<br>
+	 * A batch arrived before the previous one is kept by the server until the gap is filled, so no thread waits for it.
+	 * @param host - Client host, author of the events.
+	 * @param channel - Name of the channel, {@code null} for the default channel.
+	 * @param e - Events to publish, in order.
+	 * @param sequence - Number of the batch for this client, {@code 0} to start a new sequence.
+	 * @return Future completed with the index of the first event once the batch is published, or with a {@code RemoteException}
+	 * if the previous batch does not arrive in time or if the events could not be saved.
+	 * @throws RemoteException if the channel could not be opened.
+	 */
+	public CompletableFuture<Integer> notifyEvents(String host, String channel, List<String> e, int sequence) throws RemoteException;
+
+	/** Issue the id of a new session, the calls made with this id as client host are identified as the session.
+	 * @param host - Client host.
+	 * @return Session id, made of the host, {@code #} and a number unique to the server.
+	 */
+	public String newSession(String host);
+
+	/** Forget a client whose connection is closed: a session still connected is disconnected, and the cursors of the client are expired.<br>
+	 * A host which is not a session may still be used by other connections, so it is never disconnected, and its cursors are only expired if it is not connected.
+	 * @param host - Client host.
+	 */
+	public void closed(String host);
+}
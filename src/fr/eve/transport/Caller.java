@@ -0,0 +1,20 @@
+package fr.eve.transport;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/** The {@code Caller} interface declare the method used by a transport to run the calls of its clients on the server.<br><br>
+ * The server gives its transports a private implementation, so only them can make a call as a given client.
+ */
+public interface Caller {
+
+	/** Call a method of the server as a client.
+	 * @param host - Client host or session id, returned by {@code RMIServer.getClientHost} during the call.
+	 * @param method - Method of {@code ServerInterface}.
+	 * @param args - Arguments of the call.
+	 * @return Result of the call.
+	 * @throws InvocationTargetException if the method threw an exception.
+	 * @throws IllegalAccessException if the method could not be called.
+	 */
+	public Object call(String host, Method method, Object[] args) throws InvocationTargetException, IllegalAccessException;
+}
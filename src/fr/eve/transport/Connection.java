@@ -0,0 +1,195 @@
+package fr.eve.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/** The {@code Connection} class represent a client connected to a {@code TcpServer}.<br><br>
+ * The frames are read and written by the event loop of the connection. The input buffer only grows with the bytes received, never with the announced length of a frame. The results are queued by the worker threads and flushed by the loop,
+ * a partial write is resumed when the socket is writable again.
+ */
+class Connection {
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Initial size of the input buffer. It grows with the bytes of a larger frame as they arrive, and goes back to this size once the frame is read.
+	 */
+	static final int INPUT_SIZE = 4 * 1024;
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private TcpServer server;
+	private EventLoop loop;
+	private SocketChannel channel;
+	private SelectionKey key;
+	private volatile String host;
+	private volatile boolean session;
+	private ByteBuffer input;
+	private Queue<ByteBuffer> output;
+	private volatile boolean open;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code Connection} class.
+	 * @param server - Server receiving the calls.
+	 * @param loop - Event loop serving the connection.
+	 * @param channel - Accepted channel.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	Connection(TcpServer server, EventLoop loop, SocketChannel channel) throws IOException {
+		this.server = server;
+		this.loop = loop;
+		this.channel = channel;
+		this.host = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+		this.input = ByteBuffer.allocate(INPUT_SIZE);
+		this.output = new ConcurrentLinkedQueue<ByteBuffer>();
+		this.open = true;
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the client host.
+	 * @return Session id once a session is opened, client ip otherwise.
+	 */
+	String getHost() {
+		return host;
+	}
+
+	/** Identify the next calls of the connection by a session.
+	 * @param id - Session id.
+	 */
+	void setSession(String id) {
+		this.host = id;
+		this.session = true;
+	}
+
+	/** Check if the calls of the connection are identified by a session.
+	 * @return {@code true} if a session is opened, {@code false} otherwise.
+	 */
+	boolean isSession() {
+		return session;
+	}
+
+	/** Check if the connection is open.
+	 * @return {@code true} if the connection is open, {@code false} otherwise.
+	 */
+	boolean isOpen() {
+		return open;
+	}
+
+	/** Set the key of the connection, once registered on its loop.
+	 * @param key - Selection key.
+	 */
+	void setKey(SelectionKey key) {
+		this.key = key;
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Read the available bytes and give the complete frames to the server. Only called by the loop thread.
+	 */
+	void read() {
+		try {
+			if(channel.read(input) == -1) {
+				close();
+				return;
+			}
+			input.flip();
+			while(input.remaining() >= 4) {
+				int length = input.getInt(input.position());
+				if(length < 6 || length > MessageCodec.MAX_FRAME_SIZE)
+					throw new IOException("Corrupted frame of " + length + " bytes from " + host);
+				if(input.remaining() < 4 + length)
+					break;
+				byte[] payload = new byte[length];
+				input.position(input.position() + 4);
+				input.get(payload);
+				server.received(this, payload);
+			}
+			input.compact();
+			if(!input.hasRemaining())	//Partial frame larger than the buffer, checked above
+				resize(Math.min(2 * input.capacity(), 4 + input.getInt(0)));
+			else if(input.capacity() > INPUT_SIZE && input.position() <= INPUT_SIZE / 2)
+				resize(INPUT_SIZE);
+		} catch (IOException e) {
+			close();
+		}
+	}
+
+	/** Queue a frame and let the loop write it.
+	 * @param frame - Frame to send.
+	 */
+	void send(byte[] frame) {
+		if(!open)
+			return;
+		output.add(ByteBuffer.wrap(frame));
+		loop.execute(new Runnable() {
+			public void run() {
+				write();
+			}
+		});
+	}
+
+	/** Write the queued frames until the socket is full. Only called by the loop thread.
+	 */
+	void write() {
+		if(!open || key == null)
+			return;
+		try {
+			ByteBuffer frame;
+			while((frame = output.peek()) != null) {
+				channel.write(frame);
+				if(frame.hasRemaining()) {
+					key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return;
+				}
+				output.poll();
+			}
+			key.interestOps(SelectionKey.OP_READ);
+		} catch (IOException e) {
+			close();
+		}
+	}
+
+	/** Close the connection.
+	 */
+	void close() {
+		if(!open)
+			return;
+		open = false;
+		if(key != null)
+			key.cancel();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			//Already closed
+		}
+		output.clear();
+		server.closed(this);
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void resize(int capacity) {
+		ByteBuffer resized = ByteBuffer.allocate(capacity);
+		input.flip();
+		resized.put(input);
+		input = resized;
+	}
+}
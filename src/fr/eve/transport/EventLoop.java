@@ -0,0 +1,158 @@
+package fr.eve.transport;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/** The {@code EventLoop} class is a thread serving a share of the connections of a {@code TcpServer} with a selector.<br><br>
+ * The sockets are only read and written by the loop thread. The other threads hand over their work with {@code execute}, which wakes up the selector.
+ * An exception on a connection closes this connection only. An {@code Error}, such as an {@code OutOfMemoryError}, stops the loop and closes all its connections.
+ */
+class EventLoop implements Runnable {
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private TcpServer server;
+	private Selector selector;
+	private Queue<Runnable> tasks;
+	private Thread thread;
+	private volatile boolean running;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code EventLoop} class.
+	 * @param server - Server whose connections are served.
+	 * @param name - Name of the loop thread.
+	 * @throws IOException if the selector could not be opened.
+	 */
+	EventLoop(TcpServer server, String name) throws IOException {
+		this.server = server;
+		this.selector = Selector.open();
+		this.tasks = new ConcurrentLinkedQueue<Runnable>();
+		this.thread = new Thread(this, name);
+		this.thread.setDaemon(true);
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Start the loop thread.
+	 */
+	void start() {
+		running = true;
+		thread.start();
+	}
+
+	/** Stop the loop thread and close its connections.
+	 */
+	void stop() {
+		running = false;
+		selector.wakeup();
+	}
+
+	/** Run a task on the loop thread.
+	 * @param task - Task to run.
+	 */
+	void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	/** Register a channel on this loop.
+	 * @param channel - Channel to register, in non-blocking mode.
+	 * @param operations - Operations to select.
+	 * @param attachment - Object attached to the key.
+	 */
+	void register(final SelectableChannel channel, final int operations, final Object attachment) {
+		execute(new Runnable() {
+			public void run() {
+				try {
+					SelectionKey key = channel.register(selector, operations, attachment);
+					if(attachment instanceof Connection)
+						((Connection) attachment).setKey(key);
+				} catch (ClosedChannelException e) {
+					//Closed before being registered
+				}
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		try {
+			while(running) {
+				try {
+					selector.select();
+					Runnable task;
+					while((task = tasks.poll()) != null) {
+						try {
+							task.run();
+						} catch (RuntimeException e) {	//A write on a key cancelled in the meantime
+							e.printStackTrace();
+						}
+					}
+
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while(keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						if(!key.isValid())
+							continue;
+						if(key.isAcceptable()) {
+							SocketChannel channel = ((ServerSocketChannel) key.channel()).accept();
+							if(channel != null)
+								server.accept(channel);
+							continue;
+						}
+						Connection connection = (Connection) key.attachment();
+						try {
+							if(key.isReadable())
+								connection.read();
+							if(key.isValid() && key.isWritable())
+								connection.write();
+						} catch (RuntimeException e) {	//Only the connection is lost, the loop keeps serving the others
+							server.failed(connection, e);
+						}
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		} catch (Error e) {	//The state of the JVM is unknown, the loop is not worth keeping
+			server.stopped(thread.getName(), e);
+			throw e;
+		} finally {
+			close();
+		}
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void close() {
+		for(SelectionKey key:selector.keys()) {
+			if(key.attachment() instanceof Connection)
+				((Connection) key.attachment()).close();
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,477 @@
+package fr.eve.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.rmi.AccessException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.server.RemoteObject;
+import java.rmi.server.RemoteObjectInvocationHandler;
+import java.rmi.server.ServerNotActiveException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.eve.client.ClientInterface;
+import fr.eve.server.AlreadyConnectedException;
+import fr.eve.server.AlreadyDisconnectedException;
+import fr.eve.server.Event;
+import fr.eve.server.EventCodec;
+import fr.eve.server.EventFilter;
+import fr.eve.server.EventPage;
+import fr.eve.server.FileChunk;
+import fr.eve.server.InitialFile;
+import fr.eve.server.ServerInterface;
+import fr.eve.server.StateSnapshot;
+
+/** The {@code MessageCodec} class is used to encode the calls of the TCP transport.<br><br>
+ * A message is a frame {@code [length][payload]}. The payload of a call is {@code [id][method][arguments]} and the payload of a result is {@code [id][status][value]}.
+ * Each value is written after a tag giving its type. The events are written with an {@code EventCodec}, the other types used by {@code ServerInterface}
+ * are written field by field, so a peer can only make the other side build the types listed here.<br>
+ * An exception is sent as its class name and its message, and rebuilt as the nearest known exception class.
+ * The only serialized value is the RMI stub of a {@code ClientInterface}, read by a stream which refuses any class but the ones of a stub.
+ */
+class MessageCodec {
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Maximum length of a frame, a longer frame is considered as corrupted.
+	 * It leaves room for a page of events or a file chunk of 1 MB, the larger values must be read by pages or chunks.
+	 */
+	static final int MAX_FRAME_SIZE = 2 * 1024 * 1024;
+
+	/** Status of a result holding a returned value.
+	 */
+	static final byte RETURNED = 0;
+
+	/** Status of a result holding a thrown exception.
+	 */
+	static final byte THROWN = 1;
+
+	private static final byte NULL = 0;
+	private static final byte INTEGER = 1;
+	private static final byte LONG = 2;
+	private static final byte STRING = 3;
+	private static final byte BYTES = 4;
+	private static final byte LIST = 5;
+	private static final byte EVENT = 6;
+	private static final byte EVENTS = 7;
+	private static final byte EVENT_PAGE = 8;
+	private static final byte FILTER = 9;
+	private static final byte INITIAL_FILE = 10;
+	private static final byte FILE_CHUNK = 11;
+	private static final byte STATE_SNAPSHOT = 12;
+	private static final byte EXCEPTION = 13;
+	private static final byte REMOTE = 14;
+
+	private static final Set<String> EXCEPTIONS = new HashSet<String>(Arrays.asList(RemoteException.class.getName(), AccessException.class.getName(), ServerNotActiveException.class.getName(),
+			AlreadyConnectedException.class.getName(), AlreadyDisconnectedException.class.getName(), InterruptedException.class.getName(),
+			IllegalArgumentException.class.getName(), IllegalStateException.class.getName(), UnsupportedOperationException.class.getName(),
+			RuntimeException.class.getName(), IOException.class.getName(), Exception.class.getName()));
+	private static final Set<String> STUB_CLASSES = new HashSet<String>(Arrays.asList(Proxy.class.getName(),
+			RemoteObjectInvocationHandler.class.getName(), RemoteObject.class.getName()));
+	private static final Set<String> STUB_INTERFACES = new HashSet<String>(Arrays.asList(ClientInterface.class.getName(), Remote.class.getName()));
+
+	private static final Method[] METHODS = getMethods();
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Get the id of a remote method.
+	 * @param method - Method of {@code ServerInterface}.
+	 * @return Id of the method, the same on the client and the server.
+	 */
+	static short getId(Method method) {
+		for(short id=0;id<METHODS.length;id++)
+			if(METHODS[id].equals(method))
+				return id;
+		throw new IllegalArgumentException(method + " is not a remote method");
+	}
+
+	/** Get a remote method.
+	 * @param id - Id of the method.
+	 * @return Method of {@code ServerInterface}.
+	 * @throws IOException if the id is unknown.
+	 */
+	static Method getMethod(short id) throws IOException {
+		if(id < 0 || id >= METHODS.length)
+			throw new IOException("Unknown method " + id);
+		return METHODS[id];
+	}
+
+	/** Start a frame.
+	 * @return Output in which write the payload, the length is written by {@code toFrame}.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	static ByteArrayOutputStream newFrame() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new DataOutputStream(bytes).writeInt(0);
+		return bytes;
+	}
+
+	/** End a frame.
+	 * @param bytes - Frame started by {@code newFrame}.
+	 * @return Frame with its length.
+	 */
+	static byte[] toFrame(ByteArrayOutputStream bytes) {
+		byte[] frame = bytes.toByteArray();
+		int length = frame.length - 4;
+		frame[0] = (byte) (length >>> 24);
+		frame[1] = (byte) (length >>> 16);
+		frame[2] = (byte) (length >>> 8);
+		frame[3] = (byte) length;
+		return frame;
+	}
+
+	/** Write a value after its tag.
+	 * @param value - Value to write.
+	 * @param output - Output in which write the value.
+	 * @throws IOException if an I/O error occurs or if the type of the value is not supported.
+	 */
+	@SuppressWarnings("unchecked")
+	static void write(Object value, DataOutputStream output) throws IOException {
+		if(value == null)
+			output.writeByte(NULL);
+		else if(value instanceof Integer) {
+			output.writeByte(INTEGER);
+			output.writeInt((Integer) value);
+		}
+		else if(value instanceof Long) {
+			output.writeByte(LONG);
+			output.writeLong((Long) value);
+		}
+		else if(value instanceof String) {
+			output.writeByte(STRING);
+			writeString((String) value, output);
+		}
+		else if(value instanceof byte[]) {
+			output.writeByte(BYTES);
+			writeBytes((byte[]) value, output);
+		}
+		else if(value instanceof Event) {
+			output.writeByte(EVENT);
+			new EventCodec().encode((Event) value, null, output);
+		}
+		else if(value instanceof EventPage) {
+			EventPage page = (EventPage) value;
+			output.writeByte(EVENT_PAGE);
+			output.writeInt(page.getNextCursor());
+			output.writeInt(page.getEnd());
+			EventCodec.writeEvents(page.getEvents(), output);
+		}
+		else if(value instanceof List && isEvents((List<?>) value)) {
+			output.writeByte(EVENTS);
+			EventCodec.writeEvents((List<Event>) value, output);
+		}
+		else if(value instanceof List) {
+			output.writeByte(LIST);
+			output.writeInt(((List<?>) value).size());
+			for(Object element:(List<?>) value)
+				write(element, output);
+		}
+		else if(value instanceof EventFilter) {
+			output.writeByte(FILTER);
+			writeFilter((EventFilter) value, output);
+		}
+		else if(value instanceof InitialFile) {
+			InitialFile file = (InitialFile) value;
+			output.writeByte(INITIAL_FILE);
+			writeString(file.getFileName(), output);
+			output.writeLong(file.getSize());
+			output.writeLong(file.getLastModified());
+			writeBytes(file.getHash(), output);
+			output.writeInt(file.getBlockHashes().size());
+			for(byte[] hash:file.getBlockHashes())
+				writeBytes(hash, output);
+		}
+		else if(value instanceof FileChunk) {
+			FileChunk chunk = (FileChunk) value;
+			output.writeByte(FILE_CHUNK);
+			writeString(chunk.getFileName(), output);
+			output.writeLong(chunk.getOffset());
+			output.writeLong(chunk.getFileLength());
+			output.writeLong(chunk.getChecksum());
+			writeBytes(chunk.getData(), output);
+		}
+		else if(value instanceof StateSnapshot) {
+			output.writeByte(STATE_SNAPSHOT);
+			output.writeInt(((StateSnapshot) value).getIndex());
+			writeBytes(((StateSnapshot) value).getData(), output);
+		}
+		else if(value instanceof Throwable) {
+			output.writeByte(EXCEPTION);
+			writeException((Throwable) value, output);
+		}
+		else if(value instanceof ClientInterface && value instanceof Serializable) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream objects = new ObjectOutputStream(bytes);
+			objects.writeObject(value);
+			objects.close();
+			output.writeByte(REMOTE);
+			output.writeInt(bytes.size());
+			bytes.writeTo(output);
+		}
+		else
+			throw new IOException(value.getClass().getName() + " is not supported by the TCP transport");
+	}
+
+	/** Read a value after its tag.
+	 * @param input - Input from which read the value.
+	 * @return Read value.
+	 * @throws IOException if an I/O error occurs, if the tag is unknown or if a length is larger than the rest of the payload.
+	 */
+	static Object read(DataInputStream input) throws IOException {
+		byte tag = input.readByte();
+		switch(tag) {
+		case NULL:
+			return null;
+		case INTEGER:
+			return input.readInt();
+		case LONG:
+			return input.readLong();
+		case STRING:
+			return readString(input);
+		case BYTES:
+			return readBytes(input);
+		case EVENT:
+			return new EventCodec().decode(null, input);
+		case EVENT_PAGE:
+			int nextCursor = input.readInt();
+			int end = input.readInt();
+			return new EventPage(EventCodec.readEvents(input), nextCursor, end);
+		case EVENTS:
+			return EventCodec.readEvents(input);
+		case LIST:
+			int size = readLength(input);
+			List<Object> list = new ArrayList<Object>(size);
+			for(int i=0;i<size;i++)
+				list.add(read(input));
+			return list;
+		case FILTER:
+			return readFilter(input);
+		case INITIAL_FILE:
+			String fileName = readString(input);
+			long fileSize = input.readLong();
+			long lastModified = input.readLong();
+			byte[] hash = readBytes(input);
+			int blocks = readLength(input);
+			List<byte[]> blockHashes = new ArrayList<byte[]>(blocks);
+			for(int i=0;i<blocks;i++)
+				blockHashes.add(readBytes(input));
+			return new InitialFile(fileName, fileSize, lastModified, hash, blockHashes);
+		case FILE_CHUNK:
+			String chunkName = readString(input);
+			long offset = input.readLong();
+			long fileLength = input.readLong();
+			long checksum = input.readLong();
+			return new FileChunk(chunkName, offset, fileLength, readBytes(input), checksum);
+		case STATE_SNAPSHOT:
+			int index = input.readInt();
+			return new StateSnapshot(index, readBytes(input));
+		case EXCEPTION:
+			return readException(input);
+		case REMOTE:
+			byte[] stub = readBytes(input);
+			try {
+				return new StubInputStream(new ByteArrayInputStream(stub)).readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException("Stub could not be read", e);
+			}
+		default:
+			throw new IOException("Unknown tag " + tag);
+		}
+	}
+
+	/** Open a payload.
+	 * @param payload - Payload of a frame.
+	 * @return Input from which read the payload.
+	 */
+	static DataInputStream open(byte[] payload) {
+		return new DataInputStream(new ByteArrayInputStream(payload));
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private static Method[] getMethods() {
+		Method[] methods = ServerInterface.class.getMethods();
+		Arrays.sort(methods, new Comparator<Method>() {
+			public int compare(Method method1, Method method2) {
+				return (method1.getName() + Arrays.toString(method1.getParameterTypes())).compareTo(method2.getName() + Arrays.toString(method2.getParameterTypes()));
+			}
+		});
+		return methods;
+	}
+
+	private static boolean isEvents(List<?> list) {
+		if(list.isEmpty())
+			return false;
+		for(Object element:list)
+			if(!(element instanceof Event))
+				return false;
+		return true;
+	}
+
+	private static void writeString(String string, DataOutput output) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(DataInputStream input) throws IOException {
+		return new String(readBytes(input), StandardCharsets.UTF_8);
+	}
+
+	private static void writeBytes(byte[] bytes, DataOutput output) throws IOException {
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static byte[] readBytes(DataInputStream input) throws IOException {
+		byte[] bytes = new byte[readLength(input)];
+		input.readFully(bytes);
+		return bytes;
+	}
+
+	private static void writeStrings(Collection<String> strings, DataOutput output) throws IOException {
+		output.writeInt(strings.size());
+		for(String string:strings)
+			writeString(string, output);
+	}
+
+	private static String[] readStrings(DataInputStream input) throws IOException {
+		String[] strings = new String[readLength(input)];
+		for(int i=0;i<strings.length;i++)
+			strings[i] = readString(input);
+		return strings;
+	}
+
+	private static void writeFilter(EventFilter filter, DataOutputStream output) throws IOException {
+		output.writeBoolean(filter.isExcludeSelf());
+		output.writeBoolean(filter.getAuthors() != null);
+		if(filter.getAuthors() != null)
+			writeStrings(filter.getAuthors(), output);
+		writeStrings(filter.getExcludedAuthors(), output);
+		write(filter.getPrefix(), output);
+		output.writeInt(filter.getFields().size());
+		for(Map.Entry<String, String> field:filter.getFields().entrySet()) {
+			writeString(field.getKey(), output);
+			writeString(field.getValue(), output);
+		}
+	}
+
+	private static EventFilter readFilter(DataInputStream input) throws IOException {
+		EventFilter filter = new EventFilter();
+		if(input.readBoolean())
+			filter.excludeSelf();
+		if(input.readBoolean())
+			filter.fromAuthors(readStrings(input));
+		filter.excludeAuthors(readStrings(input));
+		Object prefix = read(input);
+		if(prefix != null && !(prefix instanceof String))
+			throw new IOException("Invalid prefix");
+		filter.withPrefix((String) prefix);
+		int fields = readLength(input);
+		for(int i=0;i<fields;i++)
+			filter.withField(readString(input), readString(input));
+		return filter;
+	}
+
+	private static void writeException(Throwable exception, DataOutput output) throws IOException {
+		Class<?> type = exception.getClass();
+		while(type != null && !EXCEPTIONS.contains(type.getName()))
+			type = type.getSuperclass();
+		String message = type == exception.getClass() ? exception.getMessage() : exception.toString();	//The class of an unknown exception is kept in the message
+		writeString(type == null ? Exception.class.getName() : type.getName(), output);
+		output.writeBoolean(message != null);
+		if(message != null)
+			writeString(message, output);
+	}
+
+	private static Throwable readException(DataInputStream input) throws IOException {
+		String type = readString(input);
+		String message = input.readBoolean() ? readString(input) : null;
+		if(type.equals(RemoteException.class.getName()))
+			return new RemoteException(message);
+		if(type.equals(AccessException.class.getName()))
+			return new AccessException(message);
+		if(type.equals(ServerNotActiveException.class.getName()))
+			return new ServerNotActiveException(message);
+		if(type.equals(AlreadyConnectedException.class.getName()))
+			return new AlreadyConnectedException();
+		if(type.equals(AlreadyDisconnectedException.class.getName()))
+			return new AlreadyDisconnectedException();
+		if(type.equals(InterruptedException.class.getName()))
+			return new InterruptedException(message);
+		if(type.equals(IllegalArgumentException.class.getName()))
+			return new IllegalArgumentException(message);
+		if(type.equals(IllegalStateException.class.getName()))
+			return new IllegalStateException(message);
+		if(type.equals(UnsupportedOperationException.class.getName()))
+			return new UnsupportedOperationException(message);
+		if(type.equals(RuntimeException.class.getName()))
+			return new RuntimeException(message);
+		if(type.equals(IOException.class.getName()))
+			return new IOException(message);
+		return new Exception(message);
+	}
+
+	private static int readLength(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if(length < 0 || length > input.available())	//The payload is in memory, each element takes at least one byte
+			throw new IOException("Invalid length " + length);
+		return length;
+	}
+
+	/** Stream reading the RMI stub of a {@code ClientInterface}, any other class is refused before being loaded.
+	 */
+	private static class StubInputStream extends ObjectInputStream {
+
+		private StubInputStream(InputStream input) throws IOException {
+			super(input);
+		}
+
+		/* (non-Javadoc)
+		 * @see java.io.ObjectInputStream#resolveClass(java.io.ObjectStreamClass)
+		 */
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass descriptor) throws IOException, ClassNotFoundException {
+			if(!STUB_CLASSES.contains(descriptor.getName()))
+				throw new InvalidClassException(descriptor.getName(), "Not a class of a remote stub");
+			return super.resolveClass(descriptor);
+		}
+
+		/* (non-Javadoc)
+		 * @see java.io.ObjectInputStream#resolveProxyClass(java.lang.String[])
+		 */
+		@Override
+		protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+			for(String name:interfaces)
+				if(!STUB_INTERFACES.contains(name))
+					throw new InvalidClassException(name, "Not a remote interface of the client");
+			return super.resolveProxyClass(interfaces);
+		}
+	}
+}
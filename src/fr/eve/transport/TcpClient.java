@@ -0,0 +1,199 @@
+package fr.eve.transport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.Socket;
+import java.rmi.ConnectException;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import fr.eve.server.ServerInterface;
+import fr.eve.utils.Threads;
+
+/** The {@code TcpClient} class is used to call a {@code TcpServer}.<br><br>
+ * The server interface is a proxy sending each call as a frame on a single connection. The calls are multiplexed: a reader thread
+ * gives each result to the call with the same id, so a call waiting for new events does not block the other calls.
+ * The callers only wait on locks and futures, so they do not pin their carrier thread when they are virtual threads.
+ * The proxy also implements {@code Closeable} to close the connection. Once {@code openSession} is called, the proxy stands for the session of its connection.
+ */
+class TcpClient implements InvocationHandler {
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private Socket socket;
+	private DataOutputStream output;
+	private ReentrantLock writeLock;
+	private DataInputStream input;
+	private AtomicInteger nextId;
+	private Map<Integer, CompletableFuture<byte[]>> calls;
+	private volatile IOException closed;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code TcpClient} class.
+	 * @param socket - Connected socket.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private TcpClient(Socket socket) throws IOException {
+		this.socket = socket;
+		this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		this.writeLock = new ReentrantLock();
+		this.nextId = new AtomicInteger();
+		this.calls = new ConcurrentHashMap<Integer, CompletableFuture<byte[]>>();
+
+		Threads.newThread("eve-tcp-client", true, new Runnable() {
+			public void run() {
+				receive();
+			}
+		}).start();
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Connect to a server.
+	 * @param ip - Server ip.
+	 * @param port - Server port.
+	 * @return Server interface, which also implements {@code Closeable}.
+	 * @throws RemoteException if the server is not reachable.
+	 */
+	static ServerInterface connect(String ip, int port) throws RemoteException {
+		try {
+			Socket socket = new Socket(ip, port);
+			socket.setTcpNoDelay(true);
+			return (ServerInterface) Proxy.newProxyInstance(ServerInterface.class.getClassLoader(),
+					new Class<?>[] {ServerInterface.class, Closeable.class}, new TcpClient(socket));
+		} catch (IOException e) {
+			throw new ConnectException("Connection refused to " + ip + ":" + port, e);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+	 */
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if(method.getDeclaringClass() == Object.class) {
+			switch(method.getName()) {
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				return "TcpClient [" + socket.getRemoteSocketAddress() + "]";
+			}
+		}
+		if(method.getDeclaringClass() == Closeable.class) {
+			close(new EOFException("Connection closed"));
+			return null;
+		}
+
+		int id = nextId.incrementAndGet();
+		CompletableFuture<byte[]> call = new CompletableFuture<byte[]>();
+		calls.put(id, call);
+		Object exception;
+		try {
+			ByteArrayOutputStream bytes = MessageCodec.newFrame();
+			DataOutputStream payload = new DataOutputStream(bytes);
+			payload.writeInt(id);
+			payload.writeShort(MessageCodec.getId(method));
+			for(int i=0;args != null && i<args.length;i++)
+				MessageCodec.write(args[i], payload);
+			byte[] frame = MessageCodec.toFrame(bytes);
+			if(frame.length - 4 > MessageCodec.MAX_FRAME_SIZE)
+				throw new IOException("Call of " + (frame.length - 4) + " bytes exceeds the maximum frame size");
+			send(frame);
+
+			DataInputStream result = MessageCodec.open(call.get());
+			byte status = result.readByte();
+			Object value = MessageCodec.read(result);
+			if(status == MessageCodec.RETURNED)
+				return method.getName().equals("openSession") ? proxy : value;
+			exception = value;
+		} catch (ExecutionException e) {
+			throw new RemoteException("Connection lost", e.getCause());
+		} catch (IOException e) {
+			throw new RemoteException("Call could not be sent", e);
+		} finally {
+			calls.remove(id);
+		}
+		if(exception instanceof RuntimeException || exception instanceof Error || (exception instanceof Throwable && isDeclared(method, (Throwable) exception)))
+			throw (Throwable) exception;	//Thrown out of the try, a remote exception is not taken for a failed send
+		throw new RemoteException("Call failed on the server", exception instanceof Throwable ? (Throwable) exception : null);
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void send(byte[] frame) throws IOException {
+		if(closed != null)
+			throw closed;
+		writeLock.lock();
+		try {
+			output.write(frame);
+			output.flush();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	private void receive() {
+		try {
+			while(true) {
+				int length = input.readInt();
+				if(length < 4 || length > MessageCodec.MAX_FRAME_SIZE)
+					throw new IOException("Corrupted frame of " + length + " bytes");
+				byte[] payload = new byte[length];
+				input.readFully(payload);
+				int id = (payload[0] & 0xFF) << 24 | (payload[1] & 0xFF) << 16 | (payload[2] & 0xFF) << 8 | (payload[3] & 0xFF);
+				CompletableFuture<byte[]> call = calls.get(id);
+				if(call != null) {
+					byte[] result = new byte[length - 4];
+					System.arraycopy(payload, 4, result, 0, result.length);
+					call.complete(result);
+				}
+			}
+		} catch (IOException e) {
+			close(e);
+		}
+	}
+
+	private void close(IOException cause) {
+		if(closed == null)
+			closed = cause;
+		try {
+			socket.close();
+		} catch (IOException e) {
+			//Already closed
+		}
+		for(CompletableFuture<byte[]> call:calls.values())
+			call.completeExceptionally(closed);
+	}
+
+	private static boolean isDeclared(Method method, Throwable exception) {
+		for(Class<?> type:method.getExceptionTypes())
+			if(type.isInstance(exception))
+				return true;
+		return false;
+	}
+}
@@ -0,0 +1,337 @@
+package fr.eve.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import fr.eve.server.Event;
+import fr.eve.utils.LogLevel;
+import fr.eve.utils.Logger;
+import fr.eve.utils.Threads;
+
+/** The {@code TcpServer} class is used to serve a {@code ServerInterface} over TCP, alongside RMI.<br><br>
+ * The connections are shared between a small fixed number of event loops, each one serving its sockets with a selector.
+ * The frames are split by the loops and the calls are decoded and run by a fixed pool of workers, or by a virtual thread each when {@code Threads.isVirtual}, through the {@code Caller} of the server so they are run as the client.<br>
+ * A call waiting for new events does not hold any thread: it is parked on the {@code Awaitable} server and given back to the workers when an event is published,
+ * so an idle subscriber only costs its socket and its buffers.
+ * Likewise a numbered batch arrived before the previous batch of its client is kept by the server, and answered once it is published.<br>
+ * A call to {@code openSession} identifies the next calls of the connection by a new session id instead of the client ip.
+ * The session lasts as long as the connection: its client is disconnected when the connection is closed.
+ */
+public class TcpServer {
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Time given to the running calls when the server is closed, in milliseconds.
+	 */
+	public static final long CLOSE_TIMEOUT = 1000;
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private Caller caller;
+	private Awaitable awaitable;
+	private int port;
+	private Logger logger;
+
+	private ServerSocketChannel acceptor;
+	private EventLoop[] loops;
+	private AtomicInteger nextLoop;
+	private ExecutorService workers;
+	private Set<Connection> connections;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code TcpServer} class.
+	 * @param caller - Caller of the server methods as the clients.
+	 * @param awaitable - Server on which the calls waiting for new events are parked.
+	 * @param port - TCP port.
+	 * @param threads - Number of event loops, the same number of workers is used for each loop.
+	 * @param logger - Server logger.
+	 */
+	public TcpServer(Caller caller, Awaitable awaitable, int port, int threads, Logger logger) {
+		this.caller = caller;
+		this.awaitable = awaitable;
+		this.port = port;
+		this.logger = logger;
+		this.loops = new EventLoop[Math.max(threads, 1)];
+		this.nextLoop = new AtomicInteger();
+		this.connections = ConcurrentHashMap.newKeySet();
+	}
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Get the server port.
+	 * @return TCP port.
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/** Get the number of open connections.
+	 * @return Number of connections.
+	 */
+	public int getConnectionCount() {
+		return connections.size();
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Open the server.
+	 * @throws IOException if the port could not be bound.
+	 */
+	public void open() throws IOException {
+		workers = Threads.newExecutor("eve-tcp-worker", loops.length * 2);
+		for(int i=0;i<loops.length;i++) {
+			loops[i] = new EventLoop(this, "eve-tcp-loop-" + i);
+			loops[i].start();
+		}
+		acceptor = ServerSocketChannel.open();
+		acceptor.bind(new InetSocketAddress(port), 1024);
+		acceptor.configureBlocking(false);
+		loops[0].register(acceptor, SelectionKey.OP_ACCEPT, null);
+		logger.log("TCP transport opened (Port : " + port + ", Loops : " + loops.length + ")");
+	}
+
+	/** Close the server and its connections.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void close() throws IOException {
+		acceptor.close();
+		for(EventLoop loop:loops)
+			loop.stop();
+		for(Connection connection:connections)
+			connection.close();
+		workers.shutdown();	//The sessions of the closed connections are disconnected, an interrupt would close the files they sync
+		try {
+			if(!workers.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS))
+				workers.shutdownNow();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		logger.log("TCP transport closed");
+	}
+
+	/** Accept a new connection and give it to the next loop.
+	 * @param channel - Accepted channel.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	void accept(SocketChannel channel) throws IOException {
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+		Connection connection = new Connection(this, loop, channel);
+		connections.add(connection);
+		loop.register(channel, SelectionKey.OP_READ, connection);
+	}
+
+	/** Forget a closed connection, and let the server forget its client.
+	 * @param connection - Closed connection.
+	 */
+	void closed(final Connection connection) {
+		connections.remove(connection);
+		execute(new Runnable() {
+			public void run() {
+				awaitable.closed(connection.getHost());
+			}
+		});
+	}
+
+	/** Hand a received call to the workers, which decode and dispatch it.
+	 * @param connection - Connection of the caller.
+	 * @param payload - Payload of the frame.
+	 */
+	void received(final Connection connection, final byte[] payload) {
+		execute(new Runnable() {
+			public void run() {
+				decode(connection, payload);
+			}
+		});
+	}
+
+	/** Close a connection whose event could not be handled by its loop.
+	 * @param connection - Failed connection.
+	 * @param error - Error thrown by the loop.
+	 */
+	void failed(Connection connection, Throwable error) {
+		logger.log(LogLevel.WARN, "Connection of " + connection.getHost() + " closed after an error : " + error);
+		connection.close();
+	}
+
+	/** Report a loop stopped by an error, its connections are closed and its clients have to connect again.
+	 * @param loop - Name of the loop.
+	 * @param error - Error thrown by the loop.
+	 */
+	void stopped(String loop, Error error) {
+		logger.log(LogLevel.ERROR, "Event loop " + loop + " stopped after an error : " + error);
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void execute(Runnable task) {
+		try {
+			workers.execute(task);
+		} catch (RejectedExecutionException e) {
+			//Server closed
+		}
+	}
+
+	private void decode(Connection connection, byte[] payload) {
+		Method method;
+		Object[] args;
+		int id;
+		try {
+			DataInputStream input = MessageCodec.open(payload);
+			id = input.readInt();
+			method = MessageCodec.getMethod(input.readShort());
+			args = new Object[method.getParameterTypes().length];
+			for(int i=0;i<args.length;i++)
+				args[i] = MessageCodec.read(input);
+		} catch (IOException | RuntimeException e) {	//A corrupted frame leaves the stream out of sync, only its connection is closed
+			logger.log(LogLevel.WARN, "Invalid call from " + connection.getHost() + " : " + e);
+			connection.close();
+			return;
+		}
+		dispatch(connection, id, method, args);
+	}
+
+	private void dispatch(final Connection connection, final int id, final Method method, final Object[] args) {
+		if(!connection.isOpen())
+			return;
+		if(isBatch(method, args)) {
+			append(connection, id, args);
+			return;
+		}
+		int cursor = getCursor(method, args);
+		if(cursor >= 0 && awaitable.isConnected(connection.getHost())) {
+			String channel = args[0] instanceof String ? (String) args[0] : null;
+			try {
+				if(awaitable.getSequence(channel) <= cursor) {
+					awaitable.whenPublished(connection.getHost(), channel, cursor, new Runnable() {
+						public void run() {
+							execute(new Runnable() {
+								public void run() {
+									dispatch(connection, id, method, args);
+								}
+							});
+						}
+					});
+					return;
+				}
+			} catch (RemoteException e) {
+				//Invalid channel, the call fails with the same exception
+			}
+		}
+		invoke(connection, id, method, args);
+	}
+
+	private void invoke(Connection connection, int id, Method method, Object[] args) {
+		if(method.getName().equals("openSession")) {	//The proxy of the client stands for the session
+			if(!connection.isSession())
+				connection.setSession(awaitable.newSession(connection.getHost()));
+			reply(connection, id, MessageCodec.RETURNED, null);
+			return;
+		}
+		try {
+			reply(connection, id, MessageCodec.RETURNED, caller.call(connection.getHost(), method, args));
+		} catch (InvocationTargetException e) {
+			reply(connection, id, MessageCodec.THROWN, e.getCause());
+		} catch (IllegalAccessException | IllegalArgumentException e) {
+			reply(connection, id, MessageCodec.THROWN, e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void append(final Connection connection, final int id, Object[] args) {
+		String channel = args.length == 3 ? (String) args[0] : null;
+		CompletableFuture<Integer> result;
+		try {
+			result = awaitable.notifyEvents(connection.getHost(), channel, (List<String>) args[args.length-2], (Integer) args[args.length-1]);
+		} catch (RemoteException e) {
+			reply(connection, id, MessageCodec.THROWN, e);
+			return;
+		}
+		result.whenComplete(new BiConsumer<Integer, Throwable>() {
+			public void accept(Integer firstIndex, Throwable error) {
+				if(error == null)
+					reply(connection, id, MessageCodec.RETURNED, firstIndex);
+				else
+					reply(connection, id, MessageCodec.THROWN, error instanceof CompletionException ? error.getCause() : error);
+			}
+		});
+	}
+
+	private void reply(Connection connection, int id, byte status, Object value) {
+		try {
+			ByteArrayOutputStream bytes = MessageCodec.newFrame();
+			DataOutputStream output = new DataOutputStream(bytes);
+			output.writeInt(id);
+			output.writeByte(status);
+			MessageCodec.write(value, output);
+			byte[] frame = MessageCodec.toFrame(bytes);
+			if(frame.length - 4 > MessageCodec.MAX_FRAME_SIZE) {
+				if(status == MessageCodec.RETURNED) {
+					reply(connection, id, MessageCodec.THROWN, new RemoteException("Result of " + (frame.length - 4) + " bytes exceeds the maximum frame size"));
+					return;
+				}
+				throw new IOException("Frame of " + (frame.length - 4) + " bytes exceeds the maximum size");
+			}
+			connection.send(frame);
+		} catch (IOException e) {
+			logger.log(LogLevel.WARN, "Result of call " + id + " could not be sent to " + connection.getHost() + " : " + e);
+			connection.close();
+		}
+	}
+
+	private static boolean isBatch(Method method, Object[] args) {	//A numbered notifyEvents, the invalid arguments are left to the call
+		if(!method.getName().equals("notifyEvents") || args.length < 2 || !(args[args.length-1] instanceof Integer) || !(args[args.length-2] instanceof List))
+			return false;
+		if(args.length == 3 && args[0] != null && !(args[0] instanceof String))
+			return false;
+		for(Object event:(List<?>) args[args.length-2])
+			if(!(event instanceof String))
+				return false;
+		return true;
+	}
+
+	private static int getCursor(Method method, Object[] args) {
+		if(!method.getName().equals("getEvents"))
+			return -1;
+		if(args[0] instanceof Event)
+			return ((Event) args[0]).getIndex() + 1;
+		if(args[0] instanceof Integer)
+			return (Integer) args[0];
+		if(args[0] instanceof String && args[1] instanceof Integer)
+			return (Integer) args[1];
+		return -1;
+	}
+}
@@ -0,0 +1,67 @@
+package fr.eve.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.rmi.ConnectException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.server.ServerNotActiveException;
+
+import fr.eve.rmi.RMIClient;
+import fr.eve.server.ServerInterface;
+
+/** The {@code Transport} enum list the ways a client can call a server.
+ */
+public enum Transport {
+
+	/** Java RMI, the server is looked up in the registry. Every blocking call holds a thread on the server.
+	 */
+	RMI {
+		public ServerInterface connect(String ip, int port, String name) throws RemoteException, NotBoundException {
+			try {
+				return openSession((ServerInterface) RMIClient.getInterface(ip, port, name));
+			} catch (NoSuchObjectException | ConnectException e) {	//The cached server was closed, it may have been opened again since
+				RMIClient.removeInterface(ip, port, name);
+				return openSession((ServerInterface) RMIClient.getInterface(ip, port, name));
+			}
+		}
+	},
+
+	/** Length-prefixed frames over a single TCP connection, served by a {@code TcpServer}. The waiting calls do not hold any thread on the server.
+	 */
+	TCP {
+		public ServerInterface connect(String ip, int port, String name) throws RemoteException {
+			ServerInterface server = TcpClient.connect(ip, port);
+			try {
+				return openSession(server);
+			} catch (RemoteException e) {
+				try {
+					((Closeable) server).close();
+				} catch (IOException closed) {
+					//Already closed
+				}
+				throw e;
+			}
+		}
+	};
+
+	/** Open a new session on a server and get its interface.<br>
+	 * The calls made through the interface are identified by the session, so each call to {@code connect} gives a distinct client, even from the same JVM.
+	 * @param ip - Server ip.
+	 * @param port - Server port.
+	 * @param name - Server name, only used by RMI.
+	 * @return Server interface of the session.
+	 * @throws RemoteException if the server is not reachable.
+	 * @throws NotBoundException if the server name does not exist.
+	 */
+	public abstract ServerInterface connect(String ip, int port, String name) throws RemoteException, NotBoundException;
+
+	private static ServerInterface openSession(ServerInterface server) throws RemoteException {
+		try {
+			return server.openSession();
+		} catch (ServerNotActiveException e) {
+			throw new RemoteException("Session could not be opened", e);
+		}
+	}
+}
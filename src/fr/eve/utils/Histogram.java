@@ -0,0 +1,171 @@
+package fr.eve.utils;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/** The {@code Histogram} class is used to measure latencies without allocating.<br><br>
+ * The latencies are counted in 64 buckets, the bucket {@code i} holding the values from {@code 2^i} to {@code 2^(i+1)-1} nanoseconds.
+ * Recording a value only increments counters, so it can be done on every call. The percentiles are computed when a {@code Snapshot} is taken,
+ * they are the upper bound of their bucket, so they are exact within a factor of two and never above the maximum.
+ */
+public class Histogram {
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private AtomicLongArray buckets;
+	private LongAdder sum;
+	private AtomicLong max;
+
+	/*************/
+	/** BUILDER **/
+	/*************/
+
+	/** Builder of the {@code Histogram} class.
+	 */
+	public Histogram() {
+		this.buckets = new AtomicLongArray(64);
+		this.sum = new LongAdder();
+		this.max = new AtomicLong();
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Record a latency.
+	 * @param nanos - Latency in nanoseconds.
+	 */
+	public void record(long nanos) {
+		if(nanos < 0)
+			nanos = 0;
+		buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos | 1));
+		sum.add(nanos);
+		long current;
+		while(nanos > (current = max.get()) && !max.compareAndSet(current, nanos));
+	}
+
+	/** Record the latency of a call started at a time.
+	 * @param start - Start of the call, from {@code System.nanoTime}.
+	 */
+	public void recordSince(long start) {
+		record(System.nanoTime() - start);
+	}
+
+	/** Take a snapshot of the recorded latencies.
+	 * @return Snapshot, in microseconds.
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[buckets.length()];
+		long total = 0;
+		for(int i=0;i<counts.length;i++)
+			total += counts[i] = buckets.get(i);
+		long mean = total == 0 ? 0 : sum.sum() / total;
+		long max = this.max.get();
+		return new Snapshot(total, toMicros(mean), toMicros(Math.min(percentile(counts, total, 0.5), max)),
+				toMicros(Math.min(percentile(counts, total, 0.99), max)), toMicros(Math.min(percentile(counts, total, 0.999), max)), toMicros(max));
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private static long percentile(long[] counts, long total, double percentile) {
+		long rank = (long) Math.ceil(total * percentile);
+		long seen = 0;
+		for(int i=0;i<counts.length;i++) {
+			seen += counts[i];
+			if(seen >= rank && counts[i] != 0)
+				return i == 63 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+		}
+		return 0;
+	}
+
+	private static long toMicros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
+	/** The {@code Snapshot} class represent the latencies recorded by a histogram at a time, in microseconds.
+	 */
+	public static class Snapshot {
+
+		private long count;
+		private long mean;
+		private long p50;
+		private long p99;
+		private long p999;
+		private long max;
+
+		/** Builder of the {@code Snapshot} class.
+		 * @param count - Number of recorded latencies.
+		 * @param mean - Mean latency.
+		 * @param p50 - Median latency.
+		 * @param p99 - 99th percentile.
+		 * @param p999 - 99.9th percentile.
+		 * @param max - Maximum latency.
+		 */
+		@ConstructorProperties({"count", "mean", "p50", "p99", "p999", "max"})
+		public Snapshot(long count, long mean, long p50, long p99, long p999, long max) {
+			this.count = count;
+			this.mean = mean;
+			this.p50 = p50;
+			this.p99 = p99;
+			this.p999 = p999;
+			this.max = max;
+		}
+
+		/** Get the count.
+		 * @return Number of recorded latencies.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/** Get the mean.
+		 * @return Mean latency in microseconds.
+		 */
+		public long getMean() {
+			return mean;
+		}
+
+		/** Get the median.
+		 * @return Median latency in microseconds.
+		 */
+		public long getP50() {
+			return p50;
+		}
+
+		/** Get the 99th percentile.
+		 * @return 99th percentile in microseconds.
+		 */
+		public long getP99() {
+			return p99;
+		}
+
+		/** Get the 99.9th percentile.
+		 * @return 99.9th percentile in microseconds.
+		 */
+		public long getP999() {
+			return p999;
+		}
+
+		/** Get the maximum.
+		 * @return Maximum latency in microseconds.
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "Snapshot [count=" + count + ", mean=" + mean + ", p50=" + p50 + ", p99=" + p99 + ", p999=" + p999 + ", max=" + max + "]";
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package fr.eve.utils;
+
+/** The {@code LogLevel} enum list the levels of the log messages, from the most detailed to the most severe.<br><br>
+ * A {@code Logger} displays the messages of its level and of the more severe levels.
+ */
+public enum LogLevel {
+
+	/** Details of each call, for example each published event. Hidden by default.
+	 */
+	DEBUG,
+
+	/** Life of the server and of its clients: opening, connections, subscriptions.
+	 */
+	INFO,
+
+	/** Failures the server recovers from.
+	 */
+	WARN,
+
+	/** Failures the server does not recover from.
+	 */
+	ERROR,
+
+	/** No message is displayed.
+	 */
+	OFF
+}
@@ -1,23 +1,77 @@
 package fr.eve.utils;
 
-/** The {@code Logger} class is used to display log messages.
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/** The {@code Logger} class is used to display log messages.<br><br>
+ * A message is displayed only if its {@code LogLevel} is at least the level of the logger. A message given by a {@code Supplier} is only built when it is displayed,
+ * so a disabled message costs nothing to the caller.<br>
+ * The messages are written by a background thread: the caller only puts the message in a bounded queue, it never waits for the console.
+ * When the queue is full the message is dropped and counted, the number of dropped messages is displayed once the writer catches up.
+ * The background thread is a daemon thread, so a shutdown hook gives it {@code EXIT_TIMEOUT} milliseconds to write the queued messages when the JVM exits.
+ * A logger built with a capacity of {@code 0} writes the messages synchronously.
  */
 public class Logger {
 
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Default number of messages waiting to be written.
+	 */
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	/** Maximum number of messages written at once by the background thread.
+	 */
+	public static final int BATCH_SIZE = 256;
+
+	/** Maximum time given to the background thread to write the queued messages when the JVM exits, in milliseconds.
+	 */
+	public static final long EXIT_TIMEOUT = 1000;
+
 	/**************/
 	/** ATRIBUTS **/
 	/**************/
 	
 	private boolean logOn;
+	private volatile LogLevel level;
+	private PrintStream output;
+	private BlockingQueue<String> queue;
+	private AtomicLong pending;
+	private LongAdder dropped;
+	private volatile Thread writer;
 
 	/*************/
 	/** BUILDER **/
 	/*************/
 	
-	/** Builder of the {@code Logger} class.
+	/** Builder of the {@code Logger} class.<br>
+	 * The messages of level {@code LogLevel.INFO} and above are written on the standard output by a background thread.
 	 */
 	public Logger() {
+		this(System.out, DEFAULT_CAPACITY);
+	}
+
+	/** Builder of the {@code Logger} class.<br>
+	 * The messages of level {@code LogLevel.INFO} and above are displayed.
+	 * @param output - Stream on which the messages are written.
+	 * @param capacity - Number of messages waiting to be written, {@code 0} to write the messages synchronously.
+	 */
+	public Logger(PrintStream output, int capacity) {
 		this.logOn  =true;
+		this.level = LogLevel.INFO;
+		this.output = output;
+		this.pending = new AtomicLong();
+		this.dropped = new LongAdder();
+		if(capacity > 0)
+			this.queue = new ArrayBlockingQueue<String>(capacity);
 	}
 	
 	/***********************/
@@ -38,15 +92,151 @@ public class Logger {
 		return this.logOn;
 	}
 
+	/** Set the level of the logger.
+	 * @param level - Least severe level of the displayed messages, {@code LogLevel.INFO} by default.
+	 */
+	public void setLevel(LogLevel level) {
+		this.level = level;
+	}
+
+	/** Get the level of the logger.
+	 * @return Least severe level of the displayed messages.
+	 */
+	public LogLevel getLevel() {
+		return level;
+	}
+
+	/** Check if the messages of a level are displayed.
+	 * @param level - Level of the messages.
+	 * @return {@code true} if the messages are displayed, {@code false} otherwise.
+	 */
+	public boolean isLoggable(LogLevel level) {
+		return logOn && level != LogLevel.OFF && level.compareTo(this.level) >= 0;
+	}
+
+	/** Get the number of dropped messages.
+	 * @return Number of messages dropped because the queue was full.
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
 	/*************/
 	/** METHODS **/
 	/*************/
 	
-	/** Display a log on the server console.
+	/** Display a log on the server console, with the {@code LogLevel.INFO} level.
 	 * @param log - Message to display.
 	 */
 	public void log(String log) {
-		if(logOn)
-			System.out.println(log);
+		log(LogLevel.INFO, log);
+	}
+
+	/** Display a log on the server console.
+	 * @param level - Level of the message.
+	 * @param log - Message to display.
+	 */
+	public void log(LogLevel level, String log) {
+		if(isLoggable(level))
+			write(level, log);
+	}
+
+	/** Display a log on the server console, the message is only built if it is displayed.
+	 * @param level - Level of the message.
+	 * @param log - Supplier of the message to display.
+	 */
+	public void log(LogLevel level, Supplier<String> log) {
+		if(isLoggable(level))
+			write(level, log.get());
+	}
+
+	/** Wait until the queued messages are written.
+	 * @param timeout - Maximum time to wait, in milliseconds.
+	 * @throws InterruptedException if any thread interrupted the current thread.
+	 */
+	public void flush(long timeout) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		synchronized(this) {
+			while(pending.get() > 0) {
+				long wait = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if(wait <= 0)
+					return;
+				wait(wait);
+			}
+		}
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private void write(LogLevel level, String log) {
+		if(level != LogLevel.INFO)
+			log = "[" + level + "] " + log;
+		if(queue == null) {
+			output.println(log);
+			return;
+		}
+		pending.incrementAndGet();
+		if(!queue.offer(log)) {
+			pending.decrementAndGet();
+			dropped.increment();
+			return;
+		}
+		if(writer == null)
+			start();
+	}
+
+	private synchronized void start() {
+		if(writer != null)
+			return;
+		writer = Threads.newThread("eve-logger", true, new Runnable() {
+			public void run() {
+				drain();
+			}
+		});
+		writer.start();
+		try {
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {	//A platform thread, as required for a hook
+				public void run() {
+					try {
+						flush(EXIT_TIMEOUT);
+					} catch (InterruptedException e) {
+						//JVM halted
+					}
+				}
+			}, "eve-logger-exit"));
+		} catch (IllegalStateException e) {
+			//JVM already exiting
+		}
+	}
+
+	private void drain() {
+		List<String> logs = new ArrayList<String>(BATCH_SIZE);
+		long reported = 0;
+		StringBuilder text = new StringBuilder();
+		try {
+			while(true) {
+				logs.add(queue.take());
+				queue.drainTo(logs, BATCH_SIZE - 1);
+				for(String log:logs)
+					text.append(log).append(System.lineSeparator());
+				long dropped = this.dropped.sum();
+				if(dropped != reported && queue.isEmpty()) {
+					text.append("[WARN] ").append(dropped - reported).append(" log messages dropped.").append(System.lineSeparator());
+					reported = dropped;
+				}
+				output.print(text);
+				output.flush();
+				text.setLength(0);
+				synchronized(this) {
+					pending.addAndGet(-logs.size());
+					notifyAll();
+				}
+				logs.clear();
+			}
+		} catch (InterruptedException e) {
+			//Logger stopped
+		}
 	}
 }
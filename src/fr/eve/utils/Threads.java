@@ -0,0 +1,141 @@
+package fr.eve.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** The {@code Threads} class is used to create the threads of the servers and the clients.<br><br>
+ * The virtual threads are used when they are enabled with {@code setVirtual} or the {@code eve.virtualThreads} system property,
+ * and when the running JVM supports them (Java 21 or later). Otherwise the platform threads are used, so the code still runs on Java 8.
+ * The virtual threads are looked up by reflection because the code is compiled for Java 8.<br>
+ * The calls received through RMI are always run by the platform threads of RMI, so only the TCP transport serves its waiting readers without a platform thread each.
+ */
+public class Threads {
+
+	/***************/
+	/** CONSTANTS **/
+	/***************/
+
+	/** Name of the system property enabling the virtual threads.
+	 */
+	public static final String VIRTUAL_PROPERTY = "eve.virtualThreads";
+
+	private static final Method OF_VIRTUAL = getMethod(Thread.class, "ofVirtual");
+	private static final Method NAME = getMethod(getClass("java.lang.Thread$Builder"), "name", String.class, long.class);
+	private static final Method FACTORY = getMethod(getClass("java.lang.Thread$Builder"), "factory");
+	private static final Method PER_TASK = getMethod(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+
+	/**************/
+	/** ATRIBUTS **/
+	/**************/
+
+	private static volatile boolean virtual = Boolean.getBoolean(VIRTUAL_PROPERTY);
+
+	/***********************/
+	/** GETTERS & SETTERS **/
+	/***********************/
+
+	/** Check if the running JVM supports the virtual threads.
+	 * @return {@code true} if the virtual threads are supported, {@code false} otherwise.
+	 */
+	public static boolean isVirtualSupported() {
+		return OF_VIRTUAL != null && NAME != null && FACTORY != null && PER_TASK != null;
+	}
+
+	/** Check if the new threads are virtual.
+	 * @return {@code true} if the virtual threads are enabled and supported, {@code false} otherwise.
+	 */
+	public static boolean isVirtual() {
+		return virtual && isVirtualSupported();
+	}
+
+	/** Enable or disable the virtual threads, for the threads created afterwards.
+	 * @param virtual - {@code true} to use the virtual threads when they are supported, {@code false} to use the platform threads.
+	 */
+	public static void setVirtual(boolean virtual) {
+		Threads.virtual = virtual;
+	}
+
+	/*************/
+	/** METHODS **/
+	/*************/
+
+	/** Get a thread factory.
+	 * @param name - Prefix of the thread names, followed by a counter.
+	 * @param daemon - {@code true} if the platform threads are daemon threads, the virtual threads are always daemon threads.
+	 * @return Thread factory.
+	 */
+	public static ThreadFactory newFactory(final String name, final boolean daemon) {
+		if(isVirtual()) {
+			try {
+				return (ThreadFactory) FACTORY.invoke(NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 1L));
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Virtual threads could not be created", e);
+			}
+		}
+		final AtomicInteger count = new AtomicInteger();
+		return new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+				thread.setDaemon(daemon);
+				return thread;
+			}
+		};
+	}
+
+	/** Create a thread, which is not started.
+	 * @param name - Name of the thread.
+	 * @param daemon - {@code true} if the platform thread is a daemon thread.
+	 * @param runnable - Task of the thread.
+	 * @return New thread.
+	 */
+	public static Thread newThread(String name, boolean daemon, Runnable runnable) {
+		Thread thread = newFactory(name, daemon).newThread(runnable);
+		thread.setName(name);
+		return thread;
+	}
+
+	/** Get an executor for tasks which may block.<br>
+	 * With the virtual threads each task gets its own thread. Otherwise the tasks share a pool of daemon platform threads.
+	 * @param name - Prefix of the thread names.
+	 * @param platformThreads - Number of platform threads, {@code 0} for a pool growing with the number of blocked tasks.
+	 * @return Executor.
+	 */
+	public static ExecutorService newExecutor(String name, int platformThreads) {
+		ThreadFactory factory = newFactory(name, true);
+		if(isVirtual()) {
+			try {
+				return (ExecutorService) PER_TASK.invoke(null, factory);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Virtual threads could not be created", e);
+			}
+		}
+		if(platformThreads == 0)
+			return Executors.newCachedThreadPool(factory);
+		return Executors.newFixedThreadPool(platformThreads, factory);
+	}
+
+	/*********************/
+	/** PRIVATE METHODS **/
+	/*********************/
+
+	private static Class<?> getClass(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	private static Method getMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+		if(type == null)
+			return null;
+		try {
+			return type.getMethod(name, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
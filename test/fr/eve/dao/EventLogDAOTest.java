@@ -0,0 +1,86 @@
+package fr.eve.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.eve.server.Event;
+import fr.eve.server.EventCodec;
+
+/** Tests of the {@code EventLogDAO} class.
+ */
+public class EventLogDAOTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void keepsAllTheEventsOfTheRolledAndCompactedSegments() throws IOException {
+		File directory = new File(folder.getRoot(), "events");
+		int count = 20000;
+		EventLogDAO log = new EventLogDAO(directory.getPath(), SyncPolicy.OS, 0, 8 * 1024);
+		log.open();
+		for(int i=0;i<count;i++) {
+			Event event = new Event("10.0.0." + (i % 16), LocalDateTime.of(2020, 1, 1, 0, 0).plusSeconds(i), "event " + i);
+			event.setIndex(i);
+			log.append(event);
+		}
+		log.close();
+
+		log = new EventLogDAO(directory.getPath(), SyncPolicy.OS, 0, 8 * 1024);
+		log.open();
+		List<Event> read = log.read(0, count);
+		int replayed = log.getReplayedCount();
+		log.close();
+
+		assertEquals(count, read.size());
+		for(int i=0;i<count;i++)
+			assertEquals("event " + i, read.get(i).getEvent());
+		assertEquals(0, replayed);
+		int compacted = 0;
+		for(String name:directory.list())
+			if(name.indexOf('-') != -1)
+				compacted++;
+		assertTrue("No compacted segment", compacted > 0);
+	}
+
+	@Test
+	public void boundsTheAuthorDictionary() throws IOException {
+		File directory = new File(folder.getRoot(), "events");
+		int count = EventCodec.DEFAULT_MAX_AUTHORS + 1000;
+		EventLogDAO log = new EventLogDAO(directory.getPath(), SyncPolicy.OS, 0, 1024 * 1024);
+		log.open();
+		List<Event> events = new ArrayList<Event>();
+		for(int i=0;i<count;i++) {
+			Event event = new Event("session-" + i, LocalDateTime.of(2020, 1, 1, 0, 0).plusSeconds(i), "event " + i);
+			event.setIndex(i);
+			events.add(event);
+		}
+		log.append(events);
+		long dictionary = new File(directory, "authors").length();
+		log.close();
+
+		log = new EventLogDAO(directory.getPath(), SyncPolicy.OS, 0, 1024 * 1024);
+		log.open();
+		List<Event> read = log.read(0, count);
+		log.close();
+
+		assertTrue("Dictionary of " + dictionary + " bytes", dictionary < 16L * EventCodec.DEFAULT_MAX_AUTHORS);
+		assertEquals(count, read.size());
+		for(int i=0;i<count;i+=997) {
+			assertEquals(i, read.get(i).getIndex());
+			assertEquals("session-" + i, read.get(i).getAuthor());
+			assertEquals("event " + i, read.get(i).getEvent());
+		}
+		assertEquals("session-" + (count - 1), read.get(count - 1).getAuthor());
+	}
+}
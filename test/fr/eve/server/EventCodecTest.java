@@ -0,0 +1,146 @@
+package fr.eve.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Tests of the {@code EventCodec} class.
+ */
+public class EventCodecTest {
+
+	private static final LocalDateTime TIME = LocalDateTime.of(2020, 1, 1, 12, 30, 15, 123456000);
+
+	@Test
+	public void encodesAnEventAlone() throws IOException {
+		Event event = newEvent(42, "10.0.0.1", TIME, "{\"text\":\"héllo 世界\"}");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new EventCodec().encode(event, null, new DataOutputStream(bytes));
+
+		assertEvent(event, new EventCodec().decode(null, new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+	}
+
+	@Test
+	public void encodesAListRelativeToThePreviousEvents() throws IOException {
+		List<Event> events = new ArrayList<Event>();
+		events.add(newEvent(1000, "10.0.0.1", TIME, "a"));
+		events.add(newEvent(1001, "10.0.0.2", TIME.minusSeconds(30), ""));	//Clocks are not monotonic
+		events.add(newEvent(1005, "10.0.0.1", TIME.plusDays(400), "c"));
+		events.add(newEvent(1006, "session-1", LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999999000), "d"));
+
+		List<Event> decoded = roundTrip(events);
+		assertEquals(events.size(), decoded.size());
+		for(int i=0;i<events.size();i++)
+			assertEvent(events.get(i), decoded.get(i));
+	}
+
+	@Test
+	public void writesTheAuthorsInlineOnceTheDictionaryIsFull() throws IOException {
+		EventCodec encoder = new EventCodec(2);
+		EventCodec decoder = new EventCodec(2);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		List<Event> events = new ArrayList<Event>();
+		for(int i=0;i<10;i++) {
+			Event event = newEvent(i, "session-" + (i % 5), TIME.plusSeconds(i), "event " + i);
+			encoder.encode(event, null, output);
+			events.add(event);
+		}
+		assertEquals(2, encoder.getAuthorCount());
+
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		for(Event event:events)
+			assertEvent(event, decoder.decode(null, input));
+		assertEquals(2, decoder.getAuthorCount());
+		assertEquals(-1, decoder.addAuthor("session-9"));
+	}
+
+	@Test
+	public void rejectsAnUnknownAuthor() {
+		byte[] record = new byte[] {0, 0, 5, 0};
+		try {
+			new EventCodec().decode(null, new DataInputStream(new ByteArrayInputStream(record)));
+			fail("Unknown author decoded");
+		} catch (IOException e) {
+			//Expected
+		}
+	}
+
+	@Test
+	public void rejectsALengthLongerThanTheInput() {
+		byte[] record = new byte[] {0, 0, 0, 1, 'a', (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x7F, 'b'};
+		try {
+			new EventCodec().decode(null, new DataInputStream(new ByteArrayInputStream(record)));
+			fail("Truncated event decoded");
+		} catch (IOException e) {
+			//Expected
+		}
+	}
+
+	@Test
+	public void addsLessThanTheJavaSerializationToThePayloads() throws IOException {
+		List<Event> events = newEvents(1000);
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		EventCodec.writeEvents(events, new DataOutputStream(encoded));
+		ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		ObjectOutputStream output = new ObjectOutputStream(serialized);
+		output.writeObject(events);
+		output.close();
+
+		long payloads = 0;
+		for(Event event:events)
+			payloads += event.getEvent().length();
+		long codecOverhead = encoded.size() - payloads, serializationOverhead = serialized.size() - payloads;
+		assertTrue("Codec overhead " + codecOverhead + " bytes, serialization overhead " + serializationOverhead + " bytes", codecOverhead * 4 < serializationOverhead);
+		assertTrue("Codec overhead of " + codecOverhead + " bytes for " + events.size() + " events", codecOverhead < 8L * events.size());
+		assertEquals(events.size(), roundTrip(events).size());
+	}
+
+	/** Generate events as the benchmarks do: 16 authors, small JSON payloads, one millisecond apart.
+	 * @param count - Number of events.
+	 * @return Events indexed from {@code 0}.
+	 */
+	private static List<Event> newEvents(int count) {
+		Random random = new Random(42);
+		List<Event> events = new ArrayList<Event>(count);
+		for(int i=0;i<count;i++) {
+			StringBuilder text = new StringBuilder();
+			for(int j=16+random.nextInt(48);j>0;j--)
+				text.append((char) ('a' + random.nextInt(26)));
+			String payload = "{\"room\":\"" + random.nextInt(100) + "\",\"user\":" + random.nextInt(10000) + ",\"text\":\"" + text + "\"}";
+			events.add(newEvent(i, "10.0.0." + random.nextInt(16), TIME.plusNanos(i * 1000000L), payload));
+		}
+		return events;
+	}
+
+	private static List<Event> roundTrip(List<Event> events) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		EventCodec.writeEvents(events, new DataOutputStream(bytes));
+		return EventCodec.readEvents(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+	private static Event newEvent(int index, String author, LocalDateTime time, String payload) {
+		Event event = new Event(author, time, payload);
+		event.setIndex(index);
+		return event;
+	}
+
+	private static void assertEvent(Event expected, Event actual) {
+		assertEquals(expected.getIndex(), actual.getIndex());
+		assertEquals(expected.getAuthor(), actual.getAuthor());
+		assertEquals(expected.getDateTime(), actual.getDateTime());
+		assertEquals(expected.getEvent(), actual.getEvent());
+	}
+}
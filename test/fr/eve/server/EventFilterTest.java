@@ -0,0 +1,59 @@
+package fr.eve.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/** Tests of the {@code EventFilter} class.
+ */
+public class EventFilterTest {
+
+	private static final String[] EVENTS = {
+		"{\"room\":\"42\",\"user\":7}",
+		"{\"room\": 42, \"text\":\"room\"}",
+		"{\"a\":{\"room\" : \"4\\\"2\"},\"room\":true}",
+		"{\"room\":\"a b\"}",
+		"{\"room\":null]",
+		"{\"room\":\"unterminated",
+		"room:42",
+		"{\"room\":42}"
+	};
+
+	private static final String[] VALUES = {"42", "4\"2", "true", "null", "a b", "7", "room", ""};
+
+	@Test
+	public void readsTheValuesOfAField() {
+		assertEquals(Arrays.asList("\"42\""), read(EVENTS[0], "room"));
+		assertEquals(Arrays.asList("42"), read(EVENTS[1], "room"));
+		assertEquals(Arrays.asList("\"4\\\"2\"", "true"), read(EVENTS[2], "room"));
+		assertEquals(Arrays.asList(), read(EVENTS[5], "room"));
+		assertEquals(Arrays.asList(), read(EVENTS[6], "room"));
+	}
+
+	@Test
+	public void readsTheValueOfEveryAcceptedEvent() {
+		for(String value:VALUES) {
+			EventFilter filter = new EventFilter().withField("room", value);
+			for(String event:EVENTS) {
+				if(!filter.acceptsEvent(event) || !EventFilter.isIndexable(value))
+					continue;
+				List<String> values = read(event, "room");
+				assertTrue(value + " in " + event, values.contains(value) || values.contains(EventFilter.quote(value)));
+			}
+		}
+		assertFalse(EventFilter.isIndexable("a b"));
+		assertFalse(EventFilter.isIndexable("\"42\""));
+	}
+
+	private static List<String> read(String event, String name) {
+		List<String> values = new ArrayList<String>();
+		EventFilter.readValues(event, EventFilter.quote(name), values);
+		return values;
+	}
+}